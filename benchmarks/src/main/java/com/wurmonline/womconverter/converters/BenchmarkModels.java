@@ -0,0 +1,143 @@
+package com.wurmonline.womconverter.converters;
+
+import com.wurmonline.womconverter.AsyncConsole;
+import com.wurmonline.womconverter.ConversionFailedException;
+import com.wurmonline.womconverter.ConversionLog;
+import com.wurmonline.womconverter.wom.WomWriter;
+import org.lwjgl.assimp.AIMaterial;
+import org.lwjgl.assimp.AIMesh;
+import org.lwjgl.assimp.AIScene;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * Generated models for the benchmarks, so they don't depend on any files outside the repository.
+ * Each model is a single textured grid mesh imported with the default post-processing profile.
+ */
+class BenchmarkModels implements AutoCloseable {
+    private final File directory;
+    private final SceneHandle scene;
+    final AIMesh mesh;
+    final AIMaterial material;
+
+    /**
+     * Generates and imports a grid with about {@code vertices} vertices. The exact count is the
+     * largest square below it, which keeps 32000 under the WOM limit of 32767.
+     */
+    BenchmarkModels(int vertices, boolean colors, boolean tangents) throws IOException, ConversionFailedException {
+        directory = Files.createTempDirectory("wom-bench").toFile();
+        File model = writeGrid(directory, (int) Math.sqrt(vertices), colors);
+
+        PostProcessing postProcessing = PostProcessing.profile("default");
+        if (tangents) postProcessing = postProcessing.withTangents();
+        scene = SceneHandle.importFile(model, postProcessing);
+
+        AIScene aiScene = scene.getScene();
+        mesh = AIMesh.create(aiScene.mMeshes().get(0));
+        material = AIMaterial.create(aiScene.mMaterials().get(mesh.mMaterialIndex()));
+    }
+
+    private static File writeGrid(File directory, int side, boolean colors) throws IOException {
+        try (PrintWriter mtl = new PrintWriter(new File(directory, "grid.mtl"), "UTF-8")) {
+            mtl.println("newmtl grid");
+            mtl.println("Kd 1 1 1");
+            mtl.println("Ks 0.5 0.5 0.5");
+            mtl.println("Ns 10");
+            mtl.println("map_Kd textures/grid.png");
+        }
+
+        File model = new File(directory, "grid.obj");
+        try (PrintWriter obj = new PrintWriter(model, "UTF-8")) {
+            obj.println("mtllib grid.mtl");
+            obj.println("usemtl grid");
+            for (int y = 0; y < side; y++) {
+                for (int x = 0; x < side; x++) {
+                    // a little height keeps normals and tangents from being trivially constant
+                    float height = (float) Math.sin(x * 0.3) * (float) Math.cos(y * 0.3);
+                    if (colors) {
+                        obj.println(String.format(Locale.ROOT, "v %d %f %d %f %f %f", x, height, y, x / (float) side, y / (float) side, 0.5f));
+                    } else {
+                        obj.println(String.format(Locale.ROOT, "v %d %f %d", x, height, y));
+                    }
+                    obj.println(String.format(Locale.ROOT, "vt %f %f", x / (float) side, y / (float) side));
+                    obj.println(String.format(Locale.ROOT, "vn %f %f %f", -height * 0.3f, 1f, height * 0.3f));
+                }
+            }
+            for (int y = 0; y < side - 1; y++) {
+                for (int x = 0; x < side - 1; x++) {
+                    int a = y * side + x + 1;
+                    int b = a + 1;
+                    int c = a + side;
+                    int d = c + 1;
+                    obj.println(String.format("f %d/%d/%d %d/%d/%d %d/%d/%d", a, a, a, c, c, c, b, b, b));
+                    obj.println(String.format("f %d/%d/%d %d/%d/%d %d/%d/%d", b, b, b, c, c, c, d, d, d));
+                }
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Number of bytes writeMesh produces for the mesh.
+     */
+    int encodedMeshBytes() throws IOException, ConversionFailedException {
+        try (Encoder encoder = new Encoder()) {
+            AssimpToWOMConverter.writeMesh(encoder.output, mesh, null, encoder.log);
+            encoder.output.flush();
+            return (int) encoder.output.getBytesWritten();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        scene.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) Files.delete(file.toPath());
+        }
+        Files.delete(directory.toPath());
+    }
+
+    /**
+     * A writer whose output is thrown away, with a log nothing is printed from, so only encoding
+     * is measured.
+     */
+    static class Encoder implements AutoCloseable {
+        private final AsyncConsole console = new AsyncConsole(System.out, System.err);
+        final ConversionLog log = new ConversionLog(ConversionLog.Level.QUIET, console);
+        final WomWriter output = new WomWriter(new DiscardChannel());
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+            console.close();
+        }
+    }
+
+    private static class DiscardChannel implements WritableByteChannel {
+        private boolean open = true;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            src.position(src.limit());
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
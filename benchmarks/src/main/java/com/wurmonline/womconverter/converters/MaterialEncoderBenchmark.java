@@ -0,0 +1,65 @@
+package com.wurmonline.womconverter.converters;
+
+import com.wurmonline.womconverter.ConversionFailedException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the small per-mesh work: resolving a generated material, writing the cached block
+ * with {@link AssimpToWOMConverter#writeMaterial} and {@code WomWriter.writeString} on a typical
+ * mesh name. Run with {@code -prof gc} for the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MaterialEncoderBenchmark {
+    private BenchmarkModels models;
+    private BenchmarkModels.Encoder encoder;
+    private EncodedMaterial material;
+    private final Properties forceMats = new Properties();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ConversionFailedException {
+        models = new BenchmarkModels(100, false, false);
+        encoder = new BenchmarkModels.Encoder();
+        material = EncodedMaterial.resolve(models.material, forceMats);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        encoder.close();
+        models.close();
+    }
+
+    @Benchmark
+    public EncodedMaterial resolveMaterial() {
+        return EncodedMaterial.resolve(models.material, forceMats);
+    }
+
+    @Benchmark
+    public void writeMaterial() throws IOException {
+        AssimpToWOMConverter.writeMaterial(encoder.output, material, encoder.log);
+    }
+
+    @Benchmark
+    public void writeString() throws IOException {
+        encoder.output.writeString("stone_wall_corner-12");
+    }
+}
@@ -0,0 +1,97 @@
+package com.wurmonline.womconverter.converters;
+
+import com.wurmonline.womconverter.ConversionFailedException;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link AssimpToWOMConverter#writeMesh} on generated grids, with output thrown
+ * away. Besides ops/s, the {@code vertices} and {@code bytes} counters report vertices/s and
+ * bytes/s; run with {@code -prof gc} for the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeshEncoderBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Model {
+        @Param({"100", "10000", "32000"})
+        public int vertices;
+
+        @Param({"false", "true"})
+        public boolean tangents;
+
+        @Param({"false", "true"})
+        public boolean colors;
+
+        BenchmarkModels models;
+        int vertexCount;
+        int meshBytes;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException, ConversionFailedException {
+            models = new BenchmarkModels(vertices, colors, tangents);
+            vertexCount = models.mesh.mNumVertices();
+            meshBytes = models.encodedMeshBytes();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            models.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Output {
+        BenchmarkModels.Encoder encoder;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            encoder = new BenchmarkModels.Encoder();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            encoder.close();
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long vertices;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            vertices = 0;
+            bytes = 0;
+        }
+    }
+
+    @Benchmark
+    public FileMetrics.MeshMetrics writeMesh(Model model, Output output, Counters counters) throws IOException, ConversionFailedException {
+        FileMetrics.MeshMetrics metrics = AssimpToWOMConverter.writeMesh(output.encoder.output, model.models.mesh, null, output.encoder.log);
+        counters.vertices += model.vertexCount;
+        counters.bytes += model.meshBytes;
+        return metrics;
+    }
+}
@@ -0,0 +1,64 @@
+package com.wurmonline.womconverter;
+
+import java.io.PrintStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes finished {@link ConversionLog}s to the console from a background thread, so conversions
+ * never wait on console I/O. Each log is written as one block and never interleaves with another.
+ */
+public class AsyncConsole implements AutoCloseable {
+    private final PrintStream out;
+    private final PrintStream err;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "console-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public AsyncConsole(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    void write(String outText, String errText) {
+        writer.execute(() -> {
+            if (!outText.isEmpty()) {
+                out.print(outText);
+                out.flush();
+            }
+            if (!errText.isEmpty()) {
+                err.print(errText);
+                err.flush();
+            }
+        });
+    }
+
+    /**
+     * Waits until everything written so far has reached the console.
+     */
+    public void awaitFlushed() throws InterruptedException {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Waits for everything written so far to reach the console. If interrupted, stops waiting and
+     * keeps the interrupt flag set.
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
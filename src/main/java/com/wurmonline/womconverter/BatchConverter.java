@@ -0,0 +1,543 @@
+package com.wurmonline.womconverter;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.wurmonline.womconverter.converters.AssimpToWOMConverter;
+import com.wurmonline.womconverter.converters.ConversionOptions;
+import com.wurmonline.womconverter.converters.ConversionResult;
+import com.wurmonline.womconverter.converters.FileMetrics;
+import com.wurmonline.womconverter.converters.WomVerifier;
+import com.wurmonline.womconverter.wom.WomModel;
+import com.wurmonline.womconverter.wom.WomReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+public class BatchConverter {
+    private final ConverterOptions options;
+    private final Properties forceMats;
+    private final MatReporter matReport;
+    private final RenderReporter renderReport;
+    private final ConversionManifest manifest;
+    private final PackWriter pack;
+    private final PrintStream out;
+    private final AsyncConsole console;
+    /**
+     * Shared by all files, for -meshthreads. Null when meshes are encoded sequentially.
+     */
+    private final ExecutorService meshExecutor;
+    /**
+     * Index of each job among all jobs of the run, when this run is one shard of it.
+     */
+    private Map<Job, Integer> runIndices;
+    /**
+     * Texture files to check materials against, from -texturedirs, or null.
+     */
+    private TextureIndex textureIndex;
+
+    private final AtomicInteger converted = new AtomicInteger();
+    private final AtomicInteger upToDate = new AtomicInteger();
+    private final AtomicInteger verified = new AtomicInteger();
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+    private final ConversionStats stats = new ConversionStats();
+
+    /**
+     * @param pack where outputs go instead of the output directory, or null
+     */
+    public BatchConverter(ConverterOptions options, Properties forceMats, MatReporter matReport, RenderReporter renderReport, ConversionManifest manifest, PackWriter pack, PrintStream out, PrintStream err) {
+        this.options = options;
+        this.forceMats = forceMats;
+        this.matReport = matReport;
+        this.renderReport = renderReport;
+        this.manifest = manifest;
+        this.pack = pack;
+        this.out = out;
+        this.console = new AsyncConsole(out, err);
+        this.meshExecutor = options.meshThreads > 1 ? Executors.newFixedThreadPool(options.meshThreads) : null;
+    }
+
+    /**
+     * Runs a whole conversion as described by the options, writing progress to the given streams.
+     *
+     * @throws IllegalArgumentException if the input or output directory isn't valid
+     */
+    public static Result run(ConverterOptions options, PrintStream out, PrintStream err) throws IOException, InterruptedException {
+        File inputDirectoryFile = new File(options.inputDirectory);
+        if (!inputDirectoryFile.isDirectory()) {
+            throw new IllegalArgumentException("Input directory is not a valid directory: " + options.inputDirectory);
+        }
+        File outputDirectoryFile = new File(options.outputDirectory);
+        if (options.packFile == null && !options.verify && !options.outputDirectory.isEmpty() && !outputDirectoryFile.exists()) {
+            outputDirectoryFile.mkdirs();
+        }
+        if (options.packFile == null && !outputDirectoryFile.isDirectory()) {
+            throw new IllegalArgumentException("Output directory is not a valid directory: " + options.outputDirectory);
+        }
+
+        Properties forceMats = new Properties();
+        if (options.forceMatsFile != null) {
+            try (FileInputStream in = new FileInputStream(options.forceMatsFile)) {
+                forceMats.load(in);
+            } catch (IOException e) {
+                throw new IOException("Error reading forcemats file", e);
+            }
+        }
+
+        MatReporter matReport = null;
+        PackWriter pack = null;
+        BatchConverter batch = null;
+
+        try {
+            // Verifying only reads outputs, so it leaves the report and manifest alone
+            if (options.matReportFile != null && !options.verify) {
+                matReport = new MatReporter(options.matReportFile, options.shardCount > 1);
+            }
+            RenderReporter renderReport = null;
+            if (options.renderReportFile != null) {
+                renderReport = new RenderReporter(options.renderReportFile);
+            }
+            TextureIndex textureIndex = null;
+            if (!options.textureDirectories.isEmpty() && !options.verify) {
+                textureIndex = TextureIndex.scan(options.textureDirectories);
+            }
+            ConversionManifest manifest = null;
+            if (options.incremental && !options.verify) {
+                manifest = ConversionManifest.load(outputDirectoryFile, err);
+            }
+            if (options.packFile != null) {
+                pack = new PackWriter(options.packFile, !options.packStored);
+            }
+
+            batch = new BatchConverter(options, forceMats, matReport, renderReport, manifest, pack, out, err);
+            batch.textureIndex = textureIndex;
+            if (options.shardCount > 1) {
+                // Splitting into shards needs the whole tree, so it's scanned before converting
+                List<Job> jobs = new ArrayList<>();
+                collectFiles(inputDirectoryFile, outputDirectoryFile, "", options.inputPattern, options.recursive, jobs::add);
+                Map<Job, Integer> runIndices = new HashMap<>();
+                for (int i = 0; i < jobs.size(); i++) runIndices.put(jobs.get(i), i);
+                jobs = selectShard(jobs, options.shardIndex, options.shardCount);
+                if (options.logLevel != ConversionLog.Level.QUIET) {
+                    out.println(String.format("Shard %d of %d: %d of %d files", options.shardIndex, options.shardCount, jobs.size(), runIndices.size()));
+                }
+                batch.runIndices = runIndices;
+                batch.convertAll(jobs);
+            } else {
+                batch.convertAll(jobs -> collectFiles(inputDirectoryFile, outputDirectoryFile, "", options.inputPattern, options.recursive, jobs));
+            }
+            if (pack != null) {
+                pack.close();
+                if (options.logLevel != ConversionLog.Level.QUIET) {
+                    out.println(String.format("Packed %d files into %s", pack.getEntryCount(), options.packFile));
+                }
+            }
+            if (renderReport != null) {
+                renderReport.write();
+                if (options.logLevel != ConversionLog.Level.QUIET) {
+                    renderReport.printWorst(out);
+                }
+            }
+            if (options.verify) {
+                if (options.logLevel != ConversionLog.Level.QUIET) {
+                    out.println(String.format("Verified %d files, %d failed", batch.verified.get(), batch.failures.size()));
+                }
+                return new Result(0, 0, batch.verified.get(), new ArrayList<>(batch.failures));
+            }
+            if (manifest != null) {
+                manifest.save();
+            }
+            if (options.logLevel != ConversionLog.Level.QUIET) {
+                batch.stats.printSummary(out);
+                if (textureIndex != null) {
+                    textureIndex.printSummary(out);
+                }
+            }
+            if (options.statsFile != null) {
+                batch.stats.write(options.statsFile);
+            }
+            if (options.watch) {
+                new ConversionWatcher(batch, options, matReport, renderReport, manifest, out).watch(inputDirectoryFile, outputDirectoryFile);
+            }
+            return new Result(batch.converted.get(), batch.upToDate.get(), 0, new ArrayList<>(batch.failures));
+        } finally {
+            if (batch != null) {
+                if (batch.meshExecutor != null) batch.meshExecutor.shutdown();
+                batch.console.close();
+            }
+            if (matReport != null) matReport.close();
+            // Drops the unfinished pack if the run failed before closing it
+            if (pack != null) pack.abort();
+        }
+    }
+
+    /**
+     * Picks the jobs of one shard out of all jobs of a run. Jobs are handed out largest first, each
+     * to the shard with the fewest input bytes so far, with ties between equally large files broken
+     * by a hash of their path. Every shard computes the same split from the same input tree, so
+     * shards don't need to coordinate. The jobs keep their order.
+     *
+     * @param shard the shard to pick, from 1 to {@code count}
+     */
+    static List<Job> selectShard(List<Job> jobs, int shard, int count) {
+        int size = jobs.size();
+        long[] sizes = new long[size];
+        int[] hashes = new int[size];
+        List<Integer> byWeight = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            sizes[i] = jobs.get(i).inputFile.length();
+            hashes[i] = Hashing.murmur3_32().hashString(jobs.get(i).key, StandardCharsets.UTF_8).asInt();
+            byWeight.add(i);
+        }
+        byWeight.sort(Comparator.comparingLong((Integer i) -> -sizes[i])
+                .thenComparingInt(i -> hashes[i])
+                .thenComparing(i -> jobs.get(i).key));
+
+        long[] loads = new long[count];
+        boolean[] selected = new boolean[size];
+        for (int i : byWeight) {
+            int lightest = 0;
+            for (int s = 1; s < count; s++) {
+                if (loads[s] < loads[lightest]) lightest = s;
+            }
+            // Empty files still count, so they're spread out too
+            loads[lightest] += Math.max(1, sizes[i]);
+            selected[i] = lightest == shard - 1;
+        }
+
+        List<Job> shardJobs = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (selected[i]) shardJobs.add(jobs.get(i));
+        }
+        return shardJobs;
+    }
+
+    /**
+     * Finds the input files in a directory, and its subdirectories with {@code recursive}, handing
+     * each to {@code jobs} as soon as its directory has been read. Files come before
+     * subdirectories, both sorted by name, so every machine finds the files in the same order.
+     */
+    static void collectFiles(File inputDirectory, File outputDirectory, String relativeDirectory, Pattern inputPattern, boolean recursive, Consumer<Job> jobs) throws IOException {
+        List<File> files = new ArrayList<>();
+        List<File> directories = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(inputDirectory.toPath())) {
+            for (Path entry : entries) {
+                File file = entry.toFile();
+                if (file.isDirectory()) {
+                    if (recursive) directories.add(file);
+                } else if (inputPattern.matcher(file.getName()).matches()) {
+                    files.add(file);
+                }
+            }
+        }
+
+        Collections.sort(files);
+        for (File file : files) {
+            jobs.accept(new Job(file, outputDirectory, relativeDirectory + file.getName()));
+        }
+
+        Collections.sort(directories);
+        for (File directory : directories) {
+            String name = directory.getName();
+            collectFiles(directory, new File(outputDirectory, name), relativeDirectory + name + "/", inputPattern, true, jobs);
+        }
+    }
+
+    public void convertAll(List<Job> jobs) throws IOException, InterruptedException {
+        convertAll(jobs::forEach);
+    }
+
+    /**
+     * Converts the jobs as the source finds them. With more than one thread, the queued jobs with
+     * the largest inputs are started first, so a big file found late doesn't run on its own at the
+     * end. Report places are still reserved in the order the jobs were found.
+     * <p>
+     * Packs are written in discovery order too, and hold on to every entry that finishes before
+     * the ones found earlier. Jobs for a pack are started in discovery order, so the entries don't
+     * pile up in memory behind small files pushed to the back of the queue.
+     */
+    private void convertAll(JobSource source) throws IOException, InterruptedException {
+        if (options.threads <= 1) {
+            source.forEach(job -> convert(job, newFileReport(job), newPackEntry(job)));
+            console.awaitFlushed();
+            return;
+        }
+
+        BlockingQueue<Runnable> queue = pack != null ? new LinkedBlockingQueue<>() : new PriorityBlockingQueue<>();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(options.threads, options.threads, 0, TimeUnit.MILLISECONDS, queue);
+        try {
+            AtomicInteger found = new AtomicInteger();
+            source.forEach(job -> {
+                // Reserve report slots here, in discovery order, so the report doesn't depend on scheduling
+                MatReporter.FileReport fileReport = newFileReport(job);
+                PackWriter.Entry packEntry = newPackEntry(job);
+                executor.execute(new Task(job, found.getAndIncrement(), () -> convert(job, fileReport, packEntry)));
+            });
+        } finally {
+            // Let what was found finish even if scanning failed, the reports are closed after this
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        console.awaitFlushed();
+    }
+
+    private MatReporter.FileReport newFileReport(Job job) {
+        if (matReport == null) return new MatReporter.FileReport();
+        return runIndices != null ? matReport.newFile(job.key, runIndices.get(job)) : matReport.newFile(job.key);
+    }
+
+    private PackWriter.Entry newPackEntry(Job job) {
+        if (pack == null) return null;
+        String directory = job.key.substring(0, job.key.lastIndexOf('/') + 1);
+        return pack.newEntry(directory + AssimpToWOMConverter.getOutputFile(job.inputFile, job.outputDirectory).getName());
+    }
+
+    private void convert(Job job, MatReporter.FileReport fileReport, PackWriter.Entry packEntry) {
+        // Each file logs into its own buffer, written out in one piece when the file is done
+        ConversionLog log = new ConversionLog(options.logLevel, console);
+        File file = job.inputFile;
+        File outputFile = AssimpToWOMConverter.getOutputFile(file, job.outputDirectory);
+        try {
+            if (options.verify) {
+                verify(job, outputFile, log);
+                return;
+            }
+
+            String inputHash = null;
+            if (manifest != null) {
+                inputHash = ConversionManifest.hash(file);
+                ConversionManifest.Entry entry = manifest.get(job.key);
+                if (entry != null && entry.isUpToDate(inputHash, optionsHash(entry.getMats().values()), outputFile)) {
+                    log.info("Up to date: " + job.key);
+                    entry.getMats().forEach((mat, texture) -> addMat(job, fileReport, mat, texture, log));
+                    fileReport.reportFile(file.getName());
+                    if (renderReport != null) {
+                        renderReport.add(job.key, WomReader.read(outputFile));
+                    }
+                    upToDate.incrementAndGet();
+                    stats.addUpToDate();
+                    return;
+                }
+            }
+
+            if (packEntry == null && !job.outputDirectory.isDirectory() && !job.outputDirectory.mkdirs() && !job.outputDirectory.isDirectory()) {
+                throw new IOException("Can't create output directory " + job.outputDirectory);
+            }
+
+            if (packEntry != null && packEntry.isDuplicate()) {
+                throw new ConversionFailedException("the pack already has " + packEntry.getPath() + " from another file");
+            }
+
+            ConversionResult result;
+            if (packEntry != null) {
+                ByteArrayOutputStream wom = new ByteArrayOutputStream();
+                result = AssimpToWOMConverter.convert(file, Channels.newChannel(wom), conversionOptions(log));
+                byte[] bytes = wom.toByteArray();
+                if (renderReport != null) {
+                    renderReport.add(job.key, WomReader.read(ByteBuffer.wrap(bytes)));
+                }
+                packEntry.write(bytes);
+            } else {
+                result = AssimpToWOMConverter.convert(file, job.outputDirectory, conversionOptions(log));
+                if (renderReport != null) {
+                    renderReport.add(job.key, WomReader.read(outputFile));
+                }
+            }
+            result.materials.forEach(material -> addMat(job, fileReport, material.name, material.texture, log));
+            fileReport.reportFile(file.getName());
+            FileMetrics metrics = result.metrics;
+            metrics.file = job.key;
+            converted.incrementAndGet();
+            stats.add(metrics);
+
+            if (manifest != null) {
+                Map<String, String> mats = new LinkedHashMap<>(fileReport.getMats());
+                manifest.put(job.key, new ConversionManifest.Entry(inputHash, optionsHash(mats.values()), ConversionManifest.hash(outputFile), mats));
+            }
+        } catch (ConversionFailedException e) {
+            log.warn("%s of %s failed: %s", options.verify ? "Verification" : "Conversion", file.getName(), e.getMessage());
+            if (e.getCause() != null)
+                log.warn(e.getCause());
+            failures.add(job.key + ": " + e.getMessage());
+            stats.addFailed();
+        } catch (Exception e) {
+            log.warn("%s of %s failed: %s", options.verify ? "Verification" : "Conversion", file.getName(), e);
+            log.warn(e);
+            failures.add(job.key + ": " + e);
+            stats.addFailed();
+        } finally {
+            fileReport.close();
+            if (packEntry != null) packEntry.close();
+            log.flush();
+        }
+    }
+
+    /**
+     * Reports a material of a file, checking its texture first with -texturedirs.
+     */
+    private void addMat(Job job, MatReporter.FileReport fileReport, String mat, String texture, ConversionLog log) {
+        TextureIndex.Problem problem = textureIndex != null ? textureIndex.check(texture) : null;
+        if (problem == null) {
+            fileReport.addMat(mat, texture);
+            return;
+        }
+        String description = textureIndex.describe(texture, problem);
+        log.warn("%s: texture %s of material %s: %s", job.key, texture, mat, description);
+        fileReport.addMat(mat, texture, description);
+    }
+
+    private ConversionOptions conversionOptions(ConversionLog log) {
+        ConversionOptions conversionOptions = new ConversionOptions();
+        conversionOptions.postProcessing = options.postProcessing;
+        conversionOptions.forceMats = forceMats;
+        conversionOptions.fixMeshNames = options.fixMeshNames;
+        conversionOptions.maxBoneWeights = options.maxBoneWeights;
+        conversionOptions.meshExecutor = meshExecutor;
+        conversionOptions.log = log;
+        return conversionOptions;
+    }
+
+    private void verify(Job job, File outputFile, ConversionLog log) throws IOException, ConversionFailedException {
+        if (!outputFile.isFile()) {
+            throw new ConversionFailedException("output " + outputFile.getName() + " doesn't exist");
+        }
+        WomModel model;
+        try {
+            model = WomReader.read(outputFile);
+        } catch (IOException e) {
+            throw new ConversionFailedException("Can't read " + outputFile.getName() + ": " + e.getMessage());
+        }
+        if (renderReport != null) {
+            renderReport.add(job.key, model);
+        }
+        List<String> problems = WomVerifier.verify(job.inputFile, model, options.postProcessing, options.fixMeshNames);
+        if (problems.isEmpty()) {
+            log.info("Verified: " + job.key);
+            verified.incrementAndGet();
+        } else {
+            for (String problem : problems) {
+                log.warn("%s: %s", job.key, problem);
+            }
+            failures.add(job.key + ": " + String.join("; ", problems));
+        }
+    }
+
+    /**
+     * Hashes the options that affect the output of a file that uses the given textures,
+     * including any -forcemats overrides for those textures.
+     */
+    private String optionsHash(Collection<String> textures) {
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putInt(options.postProcessing.getFlags())
+                .putBoolean(options.fixMeshNames);
+        if (options.maxBoneWeights > 0) {
+            hasher.putInt(options.maxBoneWeights);
+        }
+        for (String texture : new TreeSet<>(textures)) {
+            hasher.putInt(texture.length()).putString(texture, StandardCharsets.UTF_8);
+            String forced = forceMats.getProperty(texture);
+            if (forced != null) {
+                hasher.putInt(forced.length()).putString(forced, StandardCharsets.UTF_8);
+            } else {
+                hasher.putInt(-1);
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    public static class Job {
+        public final File inputFile;
+        public final File outputDirectory;
+        /**
+         * Path of the input relative to the input directory, with / separators.
+         */
+        public final String key;
+
+        public Job(File inputFile, File outputDirectory, String key) {
+            this.inputFile = inputFile;
+            this.outputDirectory = outputDirectory;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Hands out jobs as they're found.
+     */
+    private interface JobSource {
+        void forEach(Consumer<Job> jobs) throws IOException;
+    }
+
+    /**
+     * A queued conversion, ordered largest input first and then in the order the jobs were found.
+     */
+    private static class Task implements Runnable, Comparable<Task> {
+        private final long size;
+        private final int order;
+        private final Runnable conversion;
+
+        Task(Job job, int order, Runnable conversion) {
+            this.size = job.inputFile.length();
+            this.order = order;
+            this.conversion = conversion;
+        }
+
+        @Override
+        public void run() {
+            conversion.run();
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int bySize = Long.compare(other.size, size);
+            return bySize != 0 ? bySize : Integer.compare(order, other.order);
+        }
+    }
+
+    public static class Result {
+        public final int converted;
+        public final int upToDate;
+        /**
+         * Files whose output matched the source in -verify mode.
+         */
+        public final int verified;
+        /**
+         * One "path: reason" line per file that failed to convert.
+         */
+        public final List<String> failures;
+
+        public Result(int converted, int upToDate, int verified, List<String> failures) {
+            this.converted = converted;
+            this.upToDate = upToDate;
+            this.verified = verified;
+            this.failures = failures;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.wurmonline.womconverter;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Console output of a single conversion. Messages are buffered until {@link #flush()} and then
+ * handed to an {@link AsyncConsole}. Messages below the configured level are dropped before they
+ * are formatted, so callers can pass format arguments freely; multi-line diagnostics that need
+ * extra work to gather should check {@link #isVerbose()} first. Warnings are also kept, so they can
+ * be returned with the result.
+ */
+public class ConversionLog {
+    public enum Level {
+        /** Warnings and errors only */
+        QUIET,
+        /** One line per file plus warnings and errors */
+        NORMAL,
+        /** Everything, including mesh, material and node details */
+        VERBOSE
+    }
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Level level;
+    private final AsyncConsole console;
+    private final StringBuilder out = new StringBuilder();
+    private final StringBuilder err = new StringBuilder();
+    private final List<String> warnings = new ArrayList<>();
+
+    /**
+     * @param console where {@link #flush()} writes to, or null to print nothing
+     */
+    public ConversionLog(Level level, AsyncConsole console) {
+        this.level = level;
+        this.console = console;
+    }
+
+    public boolean isEnabled(Level level) {
+        return this.level.compareTo(level) >= 0;
+    }
+
+    public boolean isVerbose() {
+        return level == Level.VERBOSE;
+    }
+
+    public void info(String message) {
+        if (isEnabled(Level.NORMAL)) out.append(message).append(LINE_SEPARATOR);
+    }
+
+    public void info(String format, Object... args) {
+        if (isEnabled(Level.NORMAL)) out.append(String.format(format, args)).append(LINE_SEPARATOR);
+    }
+
+    public void verbose(String message) {
+        if (isVerbose()) out.append(message).append(LINE_SEPARATOR);
+    }
+
+    public void verbose(String format, Object... args) {
+        if (isVerbose()) out.append(String.format(format, args)).append(LINE_SEPARATOR);
+    }
+
+    public void warn(String message) {
+        warnings.add(message);
+        err.append(message).append(LINE_SEPARATOR);
+    }
+
+    public void warn(String format, Object... args) {
+        warn(String.format(format, args));
+    }
+
+    public void warn(Throwable throwable) {
+        warnings.add(throwable.toString());
+        StringWriter trace = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(trace, true));
+        err.append(trace);
+    }
+
+    public List<String> getWarnings() {
+        return Collections.unmodifiableList(warnings);
+    }
+
+    /**
+     * A log at the same level that keeps its messages until they're {@link #append appended} back
+     * here, for work done on other threads whose output must stay in order.
+     */
+    public ConversionLog newBuffer() {
+        return new ConversionLog(level, null);
+    }
+
+    /**
+     * Adds everything logged to {@code other}, as if it was logged here.
+     */
+    public void append(ConversionLog other) {
+        out.append(other.out);
+        err.append(other.err);
+        warnings.addAll(other.warnings);
+    }
+
+    /**
+     * Hands everything logged so far to the console.
+     */
+    public void flush() {
+        if (out.length() == 0 && err.length() == 0) return;
+        if (console != null) console.write(out.toString(), err.toString());
+        out.setLength(0);
+        err.setLength(0);
+    }
+}
@@ -0,0 +1,112 @@
+package com.wurmonline.womconverter;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers what each input was converted from and into, so unchanged files can be skipped.
+ * Stored as a text file in the output directory, one line per input followed by one
+ * tab-indented line per material it reported.
+ */
+public class ConversionManifest {
+    public static final String FILE_NAME = ".womconverter-manifest";
+    private static final String HEADER = "# WOM-Converter manifest 1";
+
+    private final File file;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private ConversionManifest(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param err where to warn about a manifest that can't be read, which is then ignored
+     */
+    public static ConversionManifest load(File outputDirectory, PrintStream err) throws IOException {
+        ConversionManifest manifest = new ConversionManifest(new File(outputDirectory, FILE_NAME));
+        if (!manifest.file.isFile()) return manifest;
+
+        try (BufferedReader reader = Files.newReader(manifest.file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                err.println("Ignoring manifest with unknown format: " + manifest.file);
+                return manifest;
+            }
+            Entry current = null;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", -1);
+                if (line.startsWith("\t") && parts.length == 3 && current != null) {
+                    current.mats.put(parts[1], parts[2]);
+                } else if (parts.length == 4) {
+                    current = new Entry(parts[1], parts[2], parts[3], new LinkedHashMap<>());
+                    manifest.entries.put(parts[0], current);
+                }
+            }
+        }
+        return manifest;
+    }
+
+    public Entry get(String key) {
+        return entries.get(key);
+    }
+
+    public void put(String key, Entry entry) {
+        entries.put(key, entry);
+    }
+
+    public void save() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (PrintWriter writer = new PrintWriter(Files.newWriter(temp, StandardCharsets.UTF_8))) {
+            writer.println(HEADER);
+            for (Map.Entry<String, Entry> e : new TreeMap<>(entries).entrySet()) {
+                Entry entry = e.getValue();
+                writer.println(String.join("\t", e.getKey(), entry.inputHash, entry.optionsHash, entry.outputHash));
+                entry.mats.forEach((m, t) -> writer.println("\t" + m + "\t" + t));
+            }
+        }
+        java.nio.file.Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static String hash(File file) throws IOException {
+        return Files.asByteSource(file).hash(Hashing.sha256()).toString();
+    }
+
+    public static class Entry {
+        public final String inputHash;
+        public final String optionsHash;
+        public final String outputHash;
+        private final Map<String, String> mats;
+
+        public Entry(String inputHash, String optionsHash, String outputHash, Map<String, String> mats) {
+            this.inputHash = inputHash;
+            this.optionsHash = optionsHash;
+            this.outputHash = outputHash;
+            this.mats = mats;
+        }
+
+        /**
+         * Materials and textures reported when the file was converted, in report order.
+         */
+        public Map<String, String> getMats() {
+            return Collections.unmodifiableMap(mats);
+        }
+
+        public boolean isUpToDate(String inputHash, String optionsHash, File outputFile) throws IOException {
+            return this.inputHash.equals(inputHash) && this.optionsHash.equals(optionsHash)
+                    && outputFile.isFile() && outputHash.equals(hash(outputFile));
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.wurmonline.womconverter;
+
+import com.wurmonline.womconverter.converters.NativeMemoryBudget;
+import org.lwjgl.assimp.Assimp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one JVM with Assimp loaded and runs conversion jobs sent as lines of text, either on
+ * stdin or on a local TCP port. Each line holds the same arguments as the command line and gets
+ * one response line back:
+ * <pre>
+ * OK converted=3 uptodate=0 verified=0 failed=0
+ * FAILED converted=2 uptodate=0 verified=0 failed=1	models/broken.dae: Failed to load scene - ...
+ * ERROR Input directory is not a valid directory: models
+ * </pre>
+ * {@code quit} ends the current session and {@code shutdown} stops the server.
+ */
+public class ConversionServer {
+    private static final int ACCEPT_TIMEOUT_MILLIS = 500;
+
+    private final PrintStream log;
+    private volatile boolean running = true;
+    /**
+     * Connections waiting for their next job line, closed on shutdown. Connections running a job
+     * are left to finish it. Guarded by {@code this}.
+     */
+    private final Set<Socket> idleSessions = new HashSet<>();
+
+    private ConversionServer(PrintStream log) {
+        this.log = log;
+    }
+
+    /**
+     * Starts the server from {@code -server (stdin|port) [-maxnativemem mb]}.
+     */
+    public static void run(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Missing value for -server");
+        }
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("-maxnativemem") && i + 1 < args.length) {
+                NativeMemoryBudget.get().setLimit(Long.parseLong(args[++i]) * 1024 * 1024);
+            } else {
+                throw new IllegalArgumentException("Unknown server option: " + args[i]);
+            }
+        }
+
+        if (args[1].equals("stdin")) {
+            // stdout carries the responses, so everything else goes to stderr
+            ConversionServer server = new ConversionServer(System.err);
+            server.warmUp();
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), true);
+            server.session(in, out, null);
+        } else {
+            ConversionServer server = new ConversionServer(System.out);
+            server.warmUp();
+            server.listen(Integer.parseInt(args[1]));
+        }
+    }
+
+    private void warmUp() {
+        log.println(String.format("Assimp %d.%d loaded, waiting for jobs", Assimp.aiGetVersionMajor(), Assimp.aiGetVersionMinor()));
+    }
+
+    private void listen(int port) throws IOException {
+        ExecutorService sessions = Executors.newCachedThreadPool();
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            log.println("Listening on " + serverSocket.getLocalSocketAddress());
+            // accept() wakes up now and then to see whether a session asked for a shutdown
+            serverSocket.setSoTimeout(ACCEPT_TIMEOUT_MILLIS);
+            while (running) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+                if (!addIdle(socket)) {
+                    socket.close();
+                    break;
+                }
+                sessions.execute(() -> {
+                    try (Socket s = socket;
+                         BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                         PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), true)) {
+                        session(in, out, s);
+                    } catch (IOException e) {
+                        // Idle sessions are closed under them on shutdown
+                        if (running) log.println("Session failed: " + e);
+                    } finally {
+                        removeIdle(socket);
+                    }
+                });
+            }
+        } finally {
+            sessions.shutdown();
+            // Jobs still running in other sessions finish and get their response before the server exits
+            try {
+                sessions.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Runs the jobs of one session until it quits.
+     *
+     * @param socket the connection of the session, or null for stdin
+     */
+    private void session(BufferedReader in, PrintWriter out, Socket socket) throws IOException {
+        String line;
+        while (running && (line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            if (line.equals("quit")) return;
+            if (line.equals("shutdown")) {
+                out.println("OK shutdown");
+                shutdown();
+                return;
+            }
+            if (socket != null && !removeIdle(socket)) {
+                out.println("ERROR Server is shutting down");
+                return;
+            }
+            out.println(runJob(line));
+            if (socket != null && !addIdle(socket)) return;
+        }
+    }
+
+    /**
+     * @return false if the server is shutting down, so the connection shouldn't wait for more jobs
+     */
+    private synchronized boolean addIdle(Socket socket) {
+        if (!running) return false;
+        idleSessions.add(socket);
+        return true;
+    }
+
+    /**
+     * @return false if the server is shutting down, so no new job should start
+     */
+    private synchronized boolean removeIdle(Socket socket) {
+        idleSessions.remove(socket);
+        return running;
+    }
+
+    /**
+     * Stops accepting connections and jobs, and closes the connections waiting for a job.
+     */
+    private synchronized void shutdown() {
+        running = false;
+        for (Socket socket : idleSessions) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+        idleSessions.clear();
+    }
+
+    private String runJob(String line) {
+        try {
+            ConverterOptions options = ConverterOptions.parse(tokenize(line));
+            if (options.watch) {
+                return "ERROR -watch can't be used in server jobs";
+            }
+            if (options.maxNativeMemory >= 0) {
+                // The budget is shared by all jobs running at the same time, so it's set for the whole server
+                return "ERROR -maxnativemem can't be used in server jobs, give it after -server when starting the server";
+            }
+            BatchConverter.Result result = BatchConverter.run(options, log, log);
+            StringBuilder response = new StringBuilder(result.failures.isEmpty() ? "OK" : "FAILED");
+            response.append(String.format(" converted=%d uptodate=%d verified=%d failed=%d", result.converted, result.upToDate, result.verified, result.failures.size()));
+            for (String failure : result.failures) {
+                response.append('\t').append(singleLine(failure));
+            }
+            return response.toString();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERROR Interrupted";
+        } catch (Exception e) {
+            return "ERROR " + singleLine(e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    private static String singleLine(String text) {
+        return text.replaceAll("[\\r\\n\\t]+", " ");
+    }
+
+    /**
+     * Splits a job line into arguments on whitespace. Double quotes group an argument that
+     * contains spaces.
+     */
+    static String[] tokenize(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean inArg = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                inArg = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inArg) {
+                    args.add(current.toString());
+                    current.setLength(0);
+                    inArg = false;
+                }
+            } else {
+                current.append(c);
+                inArg = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        if (inArg) {
+            args.add(current.toString());
+        }
+        return args.toArray(new String[0]);
+    }
+}
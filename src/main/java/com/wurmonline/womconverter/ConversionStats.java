@@ -0,0 +1,221 @@
+package com.wurmonline.womconverter;
+
+import com.wurmonline.womconverter.converters.FileMetrics;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.ToLongFunction;
+
+/**
+ * Collects {@link FileMetrics} from a batch and summarises them: throughput, per-phase latency
+ * percentiles and the slowest files. Summaries can also be written as JSON or in the Prometheus
+ * text format for tracking over time.
+ */
+public class ConversionStats {
+    private static final String[] PHASES = {"import", "materials", "meshes", "write", "total"};
+    private static final int SLOWEST_FILES = 10;
+
+    private final long start = System.nanoTime();
+    private final List<FileMetrics> files = new ArrayList<>();
+    private final List<Long> meshNanos = new ArrayList<>();
+    private int upToDate;
+    private int failed;
+
+    public synchronized void add(FileMetrics metrics) {
+        files.add(metrics);
+        for (FileMetrics.MeshMetrics mesh : metrics.meshes) {
+            meshNanos.add(mesh.encodeNanos);
+        }
+    }
+
+    public synchronized void addUpToDate() {
+        upToDate++;
+    }
+
+    public synchronized void addFailed() {
+        failed++;
+    }
+
+    private static long phase(FileMetrics metrics, String phase) {
+        switch (phase) {
+            case "import":
+                return metrics.importNanos;
+            case "materials":
+                return metrics.materialNanos;
+            case "meshes":
+                return metrics.meshNanos;
+            case "write":
+                return metrics.writeNanos;
+            default:
+                return metrics.totalNanos;
+        }
+    }
+
+    private long[] sorted(String phase) {
+        long[] values = new long[files.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = phase(files.get(i), phase);
+        }
+        Arrays.sort(values);
+        return values;
+    }
+
+    private long[] sortedMeshes() {
+        long[] values = new long[meshNanos.size()];
+        for (int i = 0; i < values.length; i++) values[i] = meshNanos.get(i);
+        Arrays.sort(values);
+        return values;
+    }
+
+    /**
+     * Nearest-rank percentile of an already sorted array.
+     */
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private long sum(ToLongFunction<FileMetrics> value) {
+        long total = 0;
+        for (FileMetrics file : files) total += value.applyAsLong(file);
+        return total;
+    }
+
+    private List<FileMetrics> slowest() {
+        List<FileMetrics> slowest = new ArrayList<>(files);
+        slowest.sort(Comparator.comparingLong((FileMetrics m) -> m.totalNanos).reversed());
+        return slowest.subList(0, Math.min(SLOWEST_FILES, slowest.size()));
+    }
+
+    public synchronized void printSummary(PrintStream out) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long inputBytes = sum(m -> m.inputBytes);
+        long outputBytes = sum(m -> m.bytesWritten);
+
+        out.println("------------------------------------------------------------------------");
+        out.println(String.format(Locale.ROOT, "Converted %d files (%d up to date, %d failed) in %.2f s: %.1f files/s, %.1f MB/s in, %.1f MB/s out",
+                files.size(), upToDate, failed, seconds, files.size() / seconds, megabytes(inputBytes) / seconds, megabytes(outputBytes) / seconds));
+        out.println(String.format(Locale.ROOT, "Vertices: %d, triangles: %d, skipped faces: %d, bytes written: %d",
+                sum(FileMetrics::getVertices), sum(FileMetrics::getTriangles), sum(FileMetrics::getSkippedFaces), outputBytes));
+        for (String phase : PHASES) {
+            long[] values = sorted(phase);
+            out.println(String.format(Locale.ROOT, "%-10s p50 %8.2f ms  p95 %8.2f ms  max %8.2f ms", phase,
+                    millis(percentile(values, 0.5)), millis(percentile(values, 0.95)), millis(percentile(values, 1))));
+        }
+        long[] meshes = sortedMeshes();
+        out.println(String.format(Locale.ROOT, "%-10s p50 %8.2f ms  p95 %8.2f ms  max %8.2f ms  (per mesh)", "encode",
+                millis(percentile(meshes, 0.5)), millis(percentile(meshes, 0.95)), millis(percentile(meshes, 1))));
+        if (!files.isEmpty()) {
+            out.println("Slowest files:");
+            for (FileMetrics file : slowest()) {
+                out.println(String.format(Locale.ROOT, "  %8.2f ms  %s (import %.2f ms, %d vertices)", millis(file.totalNanos), file.file, millis(file.importNanos), file.getVertices()));
+            }
+        }
+    }
+
+    /**
+     * Writes the summary to the file, in the Prometheus text format if its name ends with .prom
+     * and as JSON otherwise.
+     */
+    public synchronized void write(File file) throws FileNotFoundException {
+        try (PrintStream out = new PrintStream(file)) {
+            if (file.getName().endsWith(".prom")) {
+                writePrometheus(out);
+            } else {
+                writeJson(out);
+            }
+        }
+    }
+
+    private void writeJson(PrintStream out) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        StringBuilder json = new StringBuilder("{\n");
+        json.append(String.format(Locale.ROOT, "  \"files\": {\"converted\": %d, \"upToDate\": %d, \"failed\": %d},%n", files.size(), upToDate, failed));
+        json.append(String.format(Locale.ROOT, "  \"elapsedSeconds\": %.3f,%n", seconds));
+        json.append(String.format(Locale.ROOT, "  \"filesPerSecond\": %.3f,%n", files.size() / seconds));
+        json.append(String.format(Locale.ROOT, "  \"inputBytes\": %d,%n", sum(m -> m.inputBytes)));
+        json.append(String.format(Locale.ROOT, "  \"bytesWritten\": %d,%n", sum(m -> m.bytesWritten)));
+        json.append(String.format(Locale.ROOT, "  \"outputMBPerSecond\": %.3f,%n", megabytes(sum(m -> m.bytesWritten)) / seconds));
+        json.append(String.format(Locale.ROOT, "  \"vertices\": %d,%n", sum(FileMetrics::getVertices)));
+        json.append(String.format(Locale.ROOT, "  \"triangles\": %d,%n", sum(FileMetrics::getTriangles)));
+        json.append(String.format(Locale.ROOT, "  \"skippedFaces\": %d,%n", sum(FileMetrics::getSkippedFaces)));
+        json.append("  \"phases\": {\n");
+        for (int i = 0; i < PHASES.length; i++) {
+            long[] values = sorted(PHASES[i]);
+            json.append(String.format(Locale.ROOT, "    \"%s\": {\"p50Ms\": %.3f, \"p95Ms\": %.3f, \"maxMs\": %.3f, \"totalMs\": %.3f}%s%n", PHASES[i],
+                    millis(percentile(values, 0.5)), millis(percentile(values, 0.95)), millis(percentile(values, 1)), millis(Arrays.stream(values).sum()),
+                    i < PHASES.length - 1 ? "," : ""));
+        }
+        json.append("  },\n");
+        long[] meshes = sortedMeshes();
+        json.append(String.format(Locale.ROOT, "  \"meshEncode\": {\"p50Ms\": %.3f, \"p95Ms\": %.3f, \"maxMs\": %.3f},%n",
+                millis(percentile(meshes, 0.5)), millis(percentile(meshes, 0.95)), millis(percentile(meshes, 1))));
+        json.append("  \"slowestFiles\": [\n");
+        List<FileMetrics> slowest = slowest();
+        for (int i = 0; i < slowest.size(); i++) {
+            FileMetrics file = slowest.get(i);
+            json.append(String.format(Locale.ROOT, "    {\"file\": \"%s\", \"totalMs\": %.3f, \"importMs\": %.3f, \"meshesMs\": %.3f, \"vertices\": %d, \"triangles\": %d}%s%n",
+                    escapeJson(file.file), millis(file.totalNanos), millis(file.importNanos), millis(file.meshNanos), file.getVertices(), file.getTriangles(),
+                    i < slowest.size() - 1 ? "," : ""));
+        }
+        json.append("  ]\n}");
+        out.println(json);
+    }
+
+    private static String escapeJson(String text) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private void writePrometheus(PrintStream out) {
+        out.println("# TYPE womconverter_files_total counter");
+        out.println("womconverter_files_total{status=\"converted\"} " + files.size());
+        out.println("womconverter_files_total{status=\"uptodate\"} " + upToDate);
+        out.println("womconverter_files_total{status=\"failed\"} " + failed);
+        out.println("# TYPE womconverter_elapsed_seconds gauge");
+        out.println(String.format(Locale.ROOT, "womconverter_elapsed_seconds %.3f", (System.nanoTime() - start) / 1e9));
+        out.println("# TYPE womconverter_input_bytes_total counter");
+        out.println("womconverter_input_bytes_total " + sum(m -> m.inputBytes));
+        out.println("# TYPE womconverter_written_bytes_total counter");
+        out.println("womconverter_written_bytes_total " + sum(m -> m.bytesWritten));
+        out.println("# TYPE womconverter_vertices_total counter");
+        out.println("womconverter_vertices_total " + sum(FileMetrics::getVertices));
+        out.println("# TYPE womconverter_triangles_total counter");
+        out.println("womconverter_triangles_total " + sum(FileMetrics::getTriangles));
+        out.println("# TYPE womconverter_skipped_faces_total counter");
+        out.println("womconverter_skipped_faces_total " + sum(FileMetrics::getSkippedFaces));
+        out.println("# TYPE womconverter_phase_seconds summary");
+        for (String phase : PHASES) {
+            long[] values = sorted(phase);
+            for (double quantile : new double[]{0.5, 0.95, 1}) {
+                out.println(String.format(Locale.ROOT, "womconverter_phase_seconds{phase=\"%s\",quantile=\"%s\"} %.6f", phase, quantile == 1 ? "1" : Double.toString(quantile), percentile(values, quantile) / 1e9));
+            }
+            out.println(String.format(Locale.ROOT, "womconverter_phase_seconds_sum{phase=\"%s\"} %.6f", phase, Arrays.stream(values).sum() / 1e9));
+            out.println(String.format(Locale.ROOT, "womconverter_phase_seconds_count{phase=\"%s\"} %d", phase, values.length));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.wurmonline.womconverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the input directory tree and re-converts files as they change. Events are collected
+ * until none have arrived for {@link #DEBOUNCE_MILLIS}, so an exporter writing a file in several
+ * steps only triggers one conversion.
+ */
+public class ConversionWatcher {
+    private static final long DEBOUNCE_MILLIS = 200;
+
+    private final BatchConverter batch;
+    private final ConverterOptions options;
+    private final MatReporter matReport;
+    private final RenderReporter renderReport;
+    private final ConversionManifest manifest;
+    private final PrintStream out;
+    private final WatchService watchService;
+    private final Map<WatchKey, Directory> directories = new HashMap<>();
+
+    public ConversionWatcher(BatchConverter batch, ConverterOptions options, MatReporter matReport, RenderReporter renderReport, ConversionManifest manifest, PrintStream out) throws IOException {
+        this.batch = batch;
+        this.options = options;
+        this.matReport = matReport;
+        this.renderReport = renderReport;
+        this.manifest = manifest;
+        this.out = out;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Watches until the thread is interrupted.
+     */
+    public void watch(File inputDirectory, File outputDirectory) throws IOException, InterruptedException {
+        try {
+            register(inputDirectory.toPath(), outputDirectory, "");
+            out.println("Watching " + inputDirectory.getAbsolutePath() + " for changes");
+
+            while (true) {
+                Map<Path, Change> changed = new LinkedHashMap<>();
+                WatchKey key = watchService.take();
+                do {
+                    collect(key, changed);
+                } while ((key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+                process(changed);
+            }
+        } catch (ClosedWatchServiceException e) {
+            // closed from elsewhere, nothing more to watch
+        } finally {
+            watchService.close();
+        }
+    }
+
+    private void collect(WatchKey key, Map<Path, Change> changed) {
+        Directory directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) continue;
+            Path path = directory.input.resolve((Path) event.context());
+            Change previous = changed.get(path);
+            // A path created and then written to within the same batch is still new
+            if (previous == null || previous.kind != StandardWatchEventKinds.ENTRY_CREATE) {
+                changed.put(path, new Change(directory, event.kind()));
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    private void process(Map<Path, Change> changed) throws IOException, InterruptedException {
+        // By key, as a file in a new folder is found both by its own event and by scanning the folder
+        Map<String, BatchConverter.Job> jobs = new LinkedHashMap<>();
+        for (Map.Entry<Path, Change> e : changed.entrySet()) {
+            Path path = e.getKey();
+            Directory directory = e.getValue().directory;
+            String name = path.getFileName().toString();
+
+            if (Files.isDirectory(path)) {
+                // Windows also reports a folder as modified when a file in it changes, that file has its own event
+                if (options.recursive && e.getValue().kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                    File outputDirectory = new File(directory.output, name);
+                    if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+                        throw new IOException("Can't create output directory " + outputDirectory);
+                    }
+                    register(path, outputDirectory, directory.prefix + name + "/");
+                    BatchConverter.collectFiles(path.toFile(), outputDirectory, directory.prefix + name + "/", options.inputPattern, true, job -> jobs.put(job.key, job));
+                }
+            } else if (options.inputPattern.matcher(name).matches()) {
+                if (Files.isRegularFile(path)) {
+                    jobs.put(directory.prefix + name, new BatchConverter.Job(path.toFile(), directory.output, directory.prefix + name));
+                } else {
+                    if (matReport != null) matReport.remove(directory.prefix + name);
+                    if (renderReport != null) renderReport.remove(directory.prefix + name);
+                }
+            }
+        }
+
+        if (jobs.isEmpty()) {
+            if (renderReport != null) renderReport.write();
+            return;
+        }
+        batch.convertAll(new ArrayList<>(jobs.values()));
+        if (renderReport != null) {
+            renderReport.write();
+        }
+        if (manifest != null) {
+            manifest.save();
+        }
+    }
+
+    private void register(Path input, File output, String prefix) throws IOException {
+        WatchKey key = input.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        directories.put(key, new Directory(input, output, prefix));
+
+        if (options.recursive) {
+            File[] subdirectories = input.toFile().listFiles(File::isDirectory);
+            if (subdirectories == null) return;
+            for (File subdirectory : subdirectories) {
+                String name = subdirectory.getName();
+                register(subdirectory.toPath(), new File(output, name), prefix + name + "/");
+            }
+        }
+    }
+
+    private static class Change {
+        final Directory directory;
+        final WatchEvent.Kind<?> kind;
+
+        Change(Directory directory, WatchEvent.Kind<?> kind) {
+            this.directory = directory;
+            this.kind = kind;
+        }
+    }
+
+    private static class Directory {
+        final Path input;
+        final File output;
+        final String prefix;
+
+        Directory(Path input, File output, String prefix) {
+            this.input = input;
+            this.output = output;
+            this.prefix = prefix;
+        }
+    }
+}
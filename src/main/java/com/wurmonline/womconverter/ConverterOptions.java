@@ -0,0 +1,225 @@
+package com.wurmonline.womconverter;
+
+import com.wurmonline.womconverter.converters.PostProcessing;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Options of a single conversion run, as given on the command line or in a server job.
+ */
+public class ConverterOptions {
+    private static final int MAX_BONE_WEIGHTS = 16;
+    private static final Pattern SHARD = Pattern.compile("(\\d+)/(\\d+)");
+
+    public boolean generateTangents = false;
+    /**
+     * Post-processing from -profile, -ppflags and -generatetangents, set by {@link #parse}.
+     */
+    public PostProcessing postProcessing = PostProcessing.profile("default");
+    public boolean recursive = false;
+    public String inputDirectory = "";
+    public String outputDirectory = "";
+    public File forceMatsFile = null;
+    public File matReportFile = null;
+    public File renderReportFile = null;
+    public File statsFile = null;
+    /**
+     * Directories to check the textures of all materials against, from -texturedirs.
+     */
+    public List<File> textureDirectories = new ArrayList<>();
+    /**
+     * Zip or jar to write the outputs into instead of the output directory, from -pack.
+     */
+    public File packFile = null;
+    public boolean packStored = false;
+    public boolean fixMeshNames = false;
+    /**
+     * Bones per vertex to export with -skinning, 0 to leave skinning out.
+     */
+    public int maxBoneWeights = 0;
+    public int threads = 1;
+    /**
+     * This run converts shard {@code shardIndex} (from 1) of {@code shardCount}, from -shard.
+     */
+    public int shardIndex = 1;
+    public int shardCount = 1;
+    public int meshThreads = 1;
+    public boolean incremental = false;
+    public boolean watch = false;
+    public boolean verify = false;
+    public long maxNativeMemory = -1;
+    public ConversionLog.Level logLevel = ConversionLog.Level.NORMAL;
+    public String inputRegex;
+    /**
+     * The compiled inputRegex, set by {@link #parse}.
+     */
+    public Pattern inputPattern;
+
+    public static ConverterOptions parse(String[] args) {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Missing input_files_regex");
+        }
+
+        ConverterOptions options = new ConverterOptions();
+        String profile = "default";
+        String postProcessingFlags = "";
+
+        for (int i = 0; i < args.length - 1; i++) {
+            String arg = args[i];
+
+            switch (arg) {
+                case "-generatetangents":
+                    options.generateTangents = true;
+                    break;
+                case "-recursive":
+                    options.recursive = true;
+                    break;
+                case "-indir":
+                    options.inputDirectory = value(args, ++i);
+                    break;
+                case "-outdir":
+                    options.outputDirectory = value(args, ++i);
+                    break;
+                case "-forcemats":
+                    options.forceMatsFile = new File(value(args, ++i));
+                    break;
+                case "-matreport":
+                    options.matReportFile = new File(value(args, ++i));
+                    break;
+                case "-renderreport":
+                    options.renderReportFile = new File(value(args, ++i));
+                    break;
+                case "-texturedirs":
+                    for (String directory : value(args, ++i).split(File.pathSeparator)) {
+                        if (!directory.isEmpty()) options.textureDirectories.add(new File(directory));
+                    }
+                    break;
+                case "-stats":
+                    options.statsFile = new File(value(args, ++i));
+                    break;
+                case "-pack":
+                    options.packFile = new File(value(args, ++i));
+                    break;
+                case "-packstored":
+                    options.packStored = true;
+                    break;
+                case "-skinning":
+                    options.maxBoneWeights = Integer.parseInt(value(args, ++i));
+                    if (options.maxBoneWeights < 1 || options.maxBoneWeights > MAX_BONE_WEIGHTS) {
+                        throw new IllegalArgumentException("-skinning needs between 1 and " + MAX_BONE_WEIGHTS + " bones per vertex");
+                    }
+                    break;
+                case "-fixmeshnames":
+                    options.fixMeshNames = true;
+                    break;
+                case "-maxnativemem":
+                    options.maxNativeMemory = Long.parseLong(value(args, ++i)) * 1024 * 1024;
+                    break;
+                case "-watch":
+                    options.watch = true;
+                    break;
+                case "-verify":
+                    options.verify = true;
+                    break;
+                case "-incremental":
+                    options.incremental = true;
+                    break;
+                case "-profile":
+                    profile = value(args, ++i);
+                    break;
+                case "-ppflags":
+                    postProcessingFlags = value(args, ++i);
+                    break;
+                case "-quiet":
+                    options.logLevel = ConversionLog.Level.QUIET;
+                    break;
+                case "-verbose":
+                    options.logLevel = ConversionLog.Level.VERBOSE;
+                    break;
+                case "-shard":
+                    parseShard(options, value(args, ++i));
+                    break;
+                case "-threads":
+                    options.threads = Integer.parseInt(value(args, ++i));
+                    break;
+                case "-meshthreads":
+                    options.meshThreads = Integer.parseInt(value(args, ++i));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        if (options.verify && options.watch) {
+            throw new IllegalArgumentException("-verify can't be combined with -watch");
+        }
+        if (options.packFile != null && (options.verify || options.watch || options.incremental)) {
+            throw new IllegalArgumentException("-pack can't be combined with -verify, -watch or -incremental");
+        }
+        if (options.shardCount > 1) {
+            if (options.watch || options.incremental || options.packFile != null) {
+                throw new IllegalArgumentException("-shard can't be combined with -watch, -incremental or -pack");
+            }
+            // Each shard writes its own reports, next to where a single run would write them
+            options.matReportFile = shardFile(options.matReportFile, options.shardIndex, options.shardCount);
+            options.renderReportFile = shardFile(options.renderReportFile, options.shardIndex, options.shardCount);
+            options.statsFile = shardFile(options.statsFile, options.shardIndex, options.shardCount);
+        }
+        options.postProcessing = PostProcessing.profile(profile).withFlags(postProcessingFlags);
+        if (options.generateTangents) {
+            options.postProcessing = options.postProcessing.withTangents();
+        }
+        options.inputRegex = args[args.length - 1];
+        options.inputPattern = Pattern.compile(options.inputRegex);
+        return options;
+    }
+
+    private static void parseShard(ConverterOptions options, String shard) {
+        Matcher matcher = SHARD.matcher(shard);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("-shard needs a shard and a shard count like 2/4, not " + shard);
+        }
+        options.shardIndex = Integer.parseInt(matcher.group(1));
+        options.shardCount = Integer.parseInt(matcher.group(2));
+        if (options.shardIndex < 1 || options.shardIndex > options.shardCount) {
+            throw new IllegalArgumentException("-shard " + shard + " is out of range, shards are numbered from 1 to " + options.shardCount);
+        }
+    }
+
+    /**
+     * Name of the report of one shard: {@code mats.txt} becomes {@code mats.shard-2-of-4.txt}.
+     * Returns null for null.
+     */
+    public static File shardFile(File file, int shard, int count) {
+        if (file == null) return null;
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        return new File(file.getParentFile(), base + ".shard-" + shard + "-of-" + count + extension);
+    }
+
+    /**
+     * Matches the names {@link #shardFile} gives the reports of each shard, with the shard and the
+     * shard count as groups 1 and 2.
+     */
+    public static Pattern shardFilePattern(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        return Pattern.compile(Pattern.quote(base) + "\\.shard-(\\d+)-of-(\\d+)" + Pattern.quote(extension));
+    }
+
+    private static String value(String[] args, int i) {
+        // The last argument is always the regex, so an option value can't be there
+        if (i >= args.length - 1) {
+            throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+        }
+        return args[i];
+    }
+}
@@ -0,0 +1,46 @@
+package com.wurmonline.womconverter;
+
+import com.wurmonline.womconverter.converters.AssimpToWOMConverter;
+import com.wurmonline.womconverter.converters.ConversionOptions;
+import com.wurmonline.womconverter.converters.PostProcessing;
+import javafx.application.Application;
+import javafx.stage.FileChooser;
+import javafx.stage.Stage;
+
+import java.io.File;
+
+/**
+ * The -devfilechooser mode: opens a file chooser and converts the picked model next to it, with
+ * verbose output. Kept apart from {@link Main} so that JavaFX is only loaded when it's used.
+ */
+public class DevFileChooser extends Application {
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+
+    @Override
+    public void start(Stage primaryStage) throws Exception {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Open Collada Model");
+
+        File modelFile = fileChooser.showOpenDialog(primaryStage);
+
+        if (modelFile == null) {
+            System.exit(0);
+        }
+
+        try (AsyncConsole console = new AsyncConsole(System.out, System.err)) {
+            ConversionOptions options = new ConversionOptions();
+            options.postProcessing = PostProcessing.profile("default").withTangents();
+            options.log = new ConversionLog(ConversionLog.Level.VERBOSE, console);
+            try {
+                AssimpToWOMConverter.convert(modelFile, modelFile.getParentFile(), options);
+            } finally {
+                options.log.flush();
+            }
+        }
+
+        System.exit(0);
+    }
+}
@@ -1,170 +1,141 @@
 package com.wurmonline.womconverter;
 
-import com.wurmonline.womconverter.converters.AssimpToWOMConverter;
-import javafx.application.Application;
-import javafx.stage.FileChooser;
-import javafx.stage.Stage;
+import com.wurmonline.womconverter.converters.NativeLibraryCache;
+import com.wurmonline.womconverter.converters.NativeMemoryBudget;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
-public class Main extends Application {
+/**
+ * Command line entry point. Doesn't depend on JavaFX, which is only loaded for -devfilechooser.
+ */
+public class Main {
 
     public static void main(String[] args) {
         if (args.length == 0 || (args.length == 1 && args[0].equalsIgnoreCase("-h"))) {
             System.out.println("Usage:");
-            System.out.println("java -jar WOM_Converter.jar [-generatetangents] [-recursive] [-indir input_directory] [-outdir output_directory] input_files_regex");
+            System.out.println("java -jar WOM_Converter.jar [-generatetangents] [-recursive] [-threads n] [-meshthreads n] [-shard i/n] [-maxnativemem mb] [-incremental] [-watch] [-verify] [-profile name] [-ppflags flags] [-skinning n] [-texturedirs dirs] [-quiet|-verbose] [-indir input_directory] [-outdir output_directory | -pack file [-packstored]] input_files_regex");
             System.out.println("Options:");
             System.out.println("-generatetangents : automatically generate tangent and binormal values if they aren't present in input files. Default: off.");
             System.out.println("-recursive : export files recursively in all subfolders relative to input directory, will create output directory folders accordingly. Default: off.");
+            System.out.println("-verify : instead of converting, read back the outputs of the matching files and check them against their sources. Use the same options as for converting. Default: off.");
+            System.out.println("-profile name : Assimp post-processing profile: fast (no vertex joining, quickest), default, or game-optimized (vertex cache order, merged meshes and materials). All profiles split meshes that are too big for WOM. Default: default.");
+            System.out.println("-ppflags flags : comma separated Assimp post-processing steps to add to the profile, or remove with a leading -, e.g. FindDegenerates,-OptimizeMeshes.");
+            System.out.println("-threads n : convert up to n files at the same time, starting with the largest files found so far, or in the order they were found with -pack. Conversion starts while the input directory is still being scanned. Default: 1.");
+            System.out.println("-meshthreads n : encode up to n meshes of the same file at the same time, for models with many meshes. Output is the same as without. Default: 1.");
+            System.out.println("-shard i/n : only convert shard i of n of the matching files, split by file size so shards take about as long. Shards don't need to coordinate, so they can run in separate processes or on separate machines on the same input tree. Reports and stats get a .shard-i-of-n suffix; combine the material reports with -mergematreport. Can't be combined with -watch, -incremental or -pack. Default: off.");
+            System.out.println("-maxnativemem mb : hold back new imports while scenes already loaded use more than mb megabytes of native memory. Default: unlimited.");
+            System.out.println("-incremental : skip files whose input, options and output haven't changed since the last run. Keeps a manifest in the output directory. Default: off.");
+            System.out.println("-watch : after converting, keep watching the input directory (and subfolders with -recursive) and convert files again when they change, until stopped with Ctrl+C. Default: off.");
+            System.out.println("-quiet : only print warnings and errors. Default: off.");
+            System.out.println("-verbose : also print details of every mesh, material and node. Default: off.");
             System.out.println("-indir input_directory : look for input files in input_directory. Must be a directory. Default: current dir.");
-            System.out.println("-outdir output_directory : output directory for output files. Must be a directory. Default: current dir.");
+            System.out.println("-outdir output_directory : output directory for output files, created if it doesn't exist. Default: current dir.");
+            System.out.println("-pack <file> : write the outputs into the given zip or jar instead of the output directory, keeping the folders of -recursive. Entries are compressed in parallel with -threads. Can't be combined with -verify, -watch or -incremental.");
+            System.out.println("-packstored : store pack entries uncompressed instead of deflating them. Default: off.");
             System.out.println("-matreport <file> : reports materials and textures used in each model to given file");
+            System.out.println("-renderreport <file> : write vertex cache (ACMR/ATVR), vertex fetch, duplicate vertex and degenerate triangle statistics of every mesh to given file as tab separated values, least efficient first");
+            System.out.println("-stats <file> : write conversion timings and throughput to given file, as Prometheus text if it ends with .prom and as JSON otherwise");
             System.out.println("-forcemats <file> : load overrides for material names based on texture file");
+            System.out.println("-texturedirs <dirs> : check the texture of every material against the files in the given directories and their subfolders, separated by " + File.pathSeparator + ". Missing textures, textures found only with different upper and lower case and names found more than once are flagged in the material report and printed as warnings. Default: off.");
             System.out.println("-fixmeshnames : rename meshes based on texture");
+            System.out.println("-skinning n : export the bone weights of rigged meshes, keeping the n strongest bones of each vertex with their weights scaled to add up to 1. Default: off.");
             System.out.println("input_files_regex : regex used to lookup the input files to convert.");
             System.out.println("Examples:");
             System.out.println("java -jar WOM_Converter.jar -generatetangents .+dae");
             System.out.println("Will take all dae files in current directory, convert them to WOM generating tangent and binormal values when needed and export to current directory");
+            System.out.println("java -jar WOM_Converter.jar -server 4567");
+            System.out.println("Will keep running and accept conversion jobs on local port 4567, one line of the options above per job. Use -server stdin to read jobs from standard input instead.");
+            System.out.println("java -jar WOM_Converter.jar -mergematreport mats.txt");
+            System.out.println("Will combine the material reports written by the shards of a -shard run with -matreport mats.txt into mats.txt, the same report a single run writes");
             System.out.println("java -jar WOM_Converter.jar -devfilechooser");
             System.out.println("Will skip normal program execution and ignore other options, opening file manager to quickly test exporting of single model");
+            System.out.println("java -XX:SharedArchiveFile=target/WOM-Converter.jsa -jar target/WOM-Converter-0.1.0-jar-with-dependencies.jar .+dae");
+            System.out.println("Will start faster using the class data archive written by mvn -Pappcds package on Java 13 and later. The archive only works with the jar at the path it was built for and the same Java build, otherwise Java ignores it and starts as usual; rebuild it after moving the jar or changing Java.");
 
-            launch(args);
-        }
-
-        boolean generateTangents = false;
-        boolean recursive = false;
-        String inputDirectory = "";
-        String outputDirectory = "";
-        File forceMatsFile = null;
-        File matReportFile = null;
-        boolean fixMeshNames = false;
-
-        for (int i = 0; i < args.length; i++) {
-            String arg = args[i];
-
-            switch (arg) {
-                case "-devfilechooser":
-                    launch(args);
-                    break;
-                case "-generatetangents":
-                    generateTangents = true;
-                    break;
-                case "-recursive":
-                    recursive = true;
-                    break;
-                case "-indir":
-                    i++;
-                    inputDirectory = args[i];
-                    break;
-                case "-outdir":
-                    i++;
-                    outputDirectory = args[i];
-                    break;
-                case "-forcemats":
-                    i++;
-                    forceMatsFile = new File(args[i]);
-                    break;
-                case "-matreport":
-                    i++;
-                    matReportFile = new File(args[i]);
-                    break;
-                case "-fixmeshnames":
-                    fixMeshNames = true;
-                    break;
+            if (args.length == 0) {
+                // Started without options, like when the jar is double clicked
+                startDevFileChooser(args);
             }
-        }
-
-        String inputRegex = args[args.length - 1];
-
-        File inputDirectoryFile = new File(inputDirectory);
-        if (!inputDirectoryFile.isDirectory()) {
-            System.err.println("Input directory is not a valid directory: " + inputDirectory);
-            return;
-        }
-        File outputDirectoryFile = new File(outputDirectory);
-        if (!outputDirectoryFile.isDirectory()) {
-            System.err.println("Output directory is not a valid directory: " + outputDirectory);
             return;
         }
 
-        Properties forceMats = new Properties();
-        if (forceMatsFile != null) {
-            try (FileInputStream in = new FileInputStream(forceMatsFile)) {
-                forceMats.load(in);
-            } catch (IOException e) {
-                throw new RuntimeException("Error reading forcemats file", e);
-            }
-        }
-
-        MatReporter matReport = null;
+        NativeLibraryCache.install();
 
-        try {
-            if (matReportFile != null) {
-                matReport = new MatReporter(matReportFile);
+        for (String arg : args) {
+            if (arg.equals("-devfilechooser")) {
+                startDevFileChooser(args);
+                return;
             }
-            convertFiles(inputDirectoryFile, outputDirectoryFile, inputRegex, recursive, generateTangents, forceMats, matReport, fixMeshNames);
-        } catch (IOException ex) {
-            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
-        } finally {
-            if (matReport != null) matReport.close();
         }
 
-        System.exit(0);
-    }
-
-    private static void convertFiles(File inputDirectory, File outputDirectory, String inputRegex, boolean recursive, boolean generateTangents, Properties forceMats, MatReporter matReport, boolean fixMeshNames) throws IOException {
-        File[] filteredFiles = inputDirectory.listFiles((File file) -> {
-            if (file.isDirectory()) {
-                return false;
+        if (args.length > 0 && args[0].equals("-mergematreport")) {
+            if (args.length != 2) {
+                System.err.println("Usage: -mergematreport <file>");
+                return;
             }
-
-            return file.getName().matches(inputRegex);
-        });
-
-        for (File file : filteredFiles) {
             try {
-                AssimpToWOMConverter.convert(file, outputDirectory, generateTangents, forceMats, matReport, fixMeshNames);
-            } catch (ConversionFailedException e) {
-                System.err.println(String.format("Conversion of %s failed: %s", file.getName(), e.getMessage()));
-                if (e.getCause() != null)
-                    e.getCause().printStackTrace();
+                int fragments = MatReporter.merge(new File(args[1]));
+                System.out.println(String.format("Merged %d report fragments into %s", fragments, args[1]));
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+            } catch (IOException ex) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
             }
+            return;
         }
 
-        if (recursive) {
-            File[] directories = inputDirectory.listFiles((File file) -> {
-                return file.isDirectory();
-            });
-
-            for (File directory : directories) {
-                String name = directory.getName();
-
-                File newInputDirectory = directory;
-                File newOutputDirectory = new File(outputDirectory, name);
-                convertFiles(newInputDirectory, newOutputDirectory, inputRegex, recursive, generateTangents, forceMats, matReport, fixMeshNames);
+        if (args.length > 0 && args[0].equals("-server")) {
+            try {
+                ConversionServer.run(args);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return;
+            } catch (IOException ex) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
             }
+            System.exit(0);
         }
-    }
-
-    public void start(Stage primaryStage) throws Exception {
-        FileChooser fileChooser = new FileChooser();
-        fileChooser.setTitle("Open Collada Model");
 
-        File modelFile = fileChooser.showOpenDialog(primaryStage);
+        ConverterOptions options;
+        try {
+            options = ConverterOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
 
-        if (modelFile == null) {
-            System.exit(0);
+        if (options.maxNativeMemory >= 0) {
+            NativeMemoryBudget.get().setLimit(options.maxNativeMemory);
         }
 
-        AssimpToWOMConverter.convert(modelFile, modelFile.getParentFile(), true, new Properties(), null, false);
+        try {
+            BatchConverter.run(options, System.out, System.err);
+            if (options.maxNativeMemory >= 0 && options.logLevel != ConversionLog.Level.QUIET) {
+                NativeMemoryBudget budget = NativeMemoryBudget.get();
+                System.out.println(String.format("Peak native scene memory: %.1f MB of %.1f MB allowed", budget.getPeak() / (1024.0 * 1024.0), budget.getLimit() / (1024.0 * 1024.0)));
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        } catch (IOException | InterruptedException ex) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+        }
 
         System.exit(0);
     }
 
+    /**
+     * JavaFX isn't bundled with the jar since Java 11, so it has to be added when starting Java.
+     */
+    private static void startDevFileChooser(String[] args) {
+        try {
+            DevFileChooser.main(args);
+        } catch (NoClassDefFoundError e) {
+            System.err.println("The file chooser needs JavaFX, start Java with --module-path <javafx-sdk>/lib --add-modules javafx.controls");
+        }
+    }
 }
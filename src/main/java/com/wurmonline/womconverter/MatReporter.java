@@ -2,33 +2,248 @@ package com.wurmonline.womconverter;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class MatReporter implements AutoCloseable {
+    private static final Pattern FRAGMENT_INDEX = Pattern.compile("#(\\d+)");
+
+    private final File outFile;
+    private final boolean fragment;
     private PrintStream output;
-    private HashMap<String, String> mats = new HashMap<>();
+    private TreeMap<Integer, FileReport> finished = new TreeMap<>();
+    private int nextOrder = 0;
+    private int nextToWrite = 0;
+    // Everything written so far by input key, so a single file's section can be replaced later
+    private final LinkedHashMap<String, String> sections = new LinkedHashMap<>();
 
     public MatReporter(File outFile) {
+        this(outFile, false);
+    }
+
+    /**
+     * @param fragment write the report of a single shard, with the index of each file in the whole
+     *                 run, for {@link #merge} to put back together
+     */
+    public MatReporter(File outFile, boolean fragment) {
+        this.outFile = outFile;
+        this.fragment = fragment;
+        output = open(false);
+    }
+
+    private PrintStream open(boolean append) {
         try {
-            output = new PrintStream(outFile);
+            return new PrintStream(new FileOutputStream(outFile, append));
         } catch (FileNotFoundException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void addMat(String mat, String file) {
-        mats.put(mat, file);
+    /**
+     * Reserves a place in the report for the next file. Reports are written in the order
+     * they were reserved, regardless of the order in which conversions finish. If the key
+     * was reported before, its section is replaced in place instead.
+     */
+    public synchronized FileReport newFile(String key) {
+        return newFile(key, nextOrder);
+    }
+
+    /**
+     * Like {@link #newFile(String)}, for a file that has the given index in the whole run.
+     */
+    public synchronized FileReport newFile(String key, int index) {
+        return new FileReport(this, nextOrder++, index, key);
+    }
+
+    /**
+     * Drops the section of a file that no longer exists.
+     */
+    public synchronized void remove(String key) {
+        if (sections.remove(key) != null) {
+            rewrite();
+        }
     }
 
-    public void reportFile(String file) {
-        output.println(file);
-        mats.forEach((m, f) -> output.println(String.format("- %s -> %s", m, f)));
-        mats.clear();
+    private synchronized void finish(FileReport report) {
+        finished.put(report.order, report);
+        while (!finished.isEmpty() && finished.firstKey() == nextToWrite) {
+            FileReport next = finished.pollFirstEntry().getValue();
+            if (next.file != null) {
+                StringBuilder section = new StringBuilder();
+                if (fragment) section.append('#').append(next.index).append(System.lineSeparator());
+                section.append(next.file).append(System.lineSeparator());
+                next.mats.forEach((m, f) -> {
+                    section.append(String.format("- %s -> %s", m, f));
+                    String problem = next.problems.get(m);
+                    if (problem != null) section.append(" [").append(problem).append(']');
+                    section.append(System.lineSeparator());
+                });
+                if (sections.containsKey(next.key)) {
+                    sections.put(next.key, section.toString());
+                    rewrite();
+                } else {
+                    sections.put(next.key, section.toString());
+                    output.print(section);
+                }
+            }
+            nextToWrite++;
+        }
+        output.flush();
+    }
+
+    private void rewrite() {
+        output.close();
+        File temp = new File(outFile.getPath() + ".tmp");
+        try (PrintStream tempOutput = new PrintStream(temp)) {
+            sections.values().forEach(tempOutput::print);
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            Files.move(temp.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        output = open(true);
     }
 
     @Override
-    public void close() {
+    public synchronized void close() {
         output.close();
     }
+
+    /**
+     * Combines the fragments written by the shards of a run into {@code report}, in the same order
+     * a single run writes it. The fragments are found next to the report, and all shards have to
+     * be there.
+     *
+     * @return the number of fragments merged
+     * @throws IllegalArgumentException if no fragments are found or some are missing
+     */
+    public static int merge(File report) throws IOException {
+        File directory = report.getAbsoluteFile().getParentFile();
+        Pattern fragmentName = ConverterOptions.shardFilePattern(report);
+        Map<Integer, File> fragments = new TreeMap<>();
+        int count = -1;
+        File[] files = directory.listFiles();
+        for (File file : files != null ? files : new File[0]) {
+            Matcher matcher = fragmentName.matcher(file.getName());
+            if (!matcher.matches()) continue;
+            int shardCount = Integer.parseInt(matcher.group(2));
+            if (count != -1 && shardCount != count) {
+                throw new IllegalArgumentException("Fragments of runs with " + count + " and " + shardCount + " shards are mixed next to " + report);
+            }
+            count = shardCount;
+            fragments.put(Integer.parseInt(matcher.group(1)), file);
+        }
+        if (count == -1) {
+            throw new IllegalArgumentException("No report fragments found for " + report);
+        }
+        for (int shard = 1; shard <= count; shard++) {
+            if (!fragments.containsKey(shard)) {
+                throw new IllegalArgumentException("Report fragment of shard " + shard + " of " + count + " is missing");
+            }
+        }
+
+        TreeMap<Integer, String> sections = new TreeMap<>();
+        for (File fragment : fragments.values()) {
+            StringBuilder section = null;
+            int index = -1;
+            for (String line : Files.readAllLines(fragment.toPath(), Charset.defaultCharset())) {
+                Matcher matcher = FRAGMENT_INDEX.matcher(line);
+                if (matcher.matches()) {
+                    if (section != null) sections.put(index, section.toString());
+                    section = new StringBuilder();
+                    index = Integer.parseInt(matcher.group(1));
+                } else if (section != null) {
+                    section.append(line).append(System.lineSeparator());
+                } else {
+                    throw new IOException(fragment.getName() + " isn't a report fragment");
+                }
+            }
+            if (section != null) sections.put(index, section.toString());
+        }
+
+        File temp = new File(report.getPath() + ".tmp");
+        try (PrintStream out = new PrintStream(temp)) {
+            sections.values().forEach(out::print);
+        }
+        Files.move(temp.toPath(), report.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return count;
+    }
+
+    /**
+     * Materials collected for a single converted file. Each instance is owned by one conversion,
+     * so no locking is needed until it's handed back to the reporter.
+     */
+    public static class FileReport implements AutoCloseable {
+        private final MatReporter reporter;
+        private final int order;
+        private final int index;
+        private final String key;
+        private final HashMap<String, String> mats = new HashMap<>();
+        // Texture problems found with -texturedirs, by material
+        private final HashMap<String, String> problems = new HashMap<>();
+        private String file;
+        private boolean done;
+
+        /**
+         * Creates a report that isn't written anywhere, for callers that only need the collected materials.
+         */
+        public FileReport() {
+            this(null, -1, -1, null);
+        }
+
+        private FileReport(MatReporter reporter, int order, int index, String key) {
+            this.reporter = reporter;
+            this.order = order;
+            this.index = index;
+            this.key = key;
+        }
+
+        public void addMat(String mat, String file) {
+            mats.put(mat, file);
+        }
+
+        /**
+         * Adds a material whose texture has a problem, which is written after it in the report.
+         */
+        public void addMat(String mat, String file, String problem) {
+            mats.put(mat, file);
+            problems.put(mat, problem);
+        }
+
+        public Map<String, String> getMats() {
+            return Collections.unmodifiableMap(mats);
+        }
+
+        public void reportFile(String file) {
+            if (done) return;
+            this.file = file;
+            done = true;
+            if (reporter != null) reporter.finish(this);
+        }
+
+        /**
+         * Releases the reserved place without writing anything if the file was never reported,
+         * so failed conversions don't hold back the files after them.
+         */
+        @Override
+        public void close() {
+            if (done) return;
+            done = true;
+            if (reporter != null) reporter.finish(this);
+        }
+    }
 }
@@ -0,0 +1,323 @@
+package com.wurmonline.womconverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes converted models straight into a zip or jar pack. Each entry is compressed by the thread
+ * that converted it, so compression runs in parallel, and the pack file itself is only appended to
+ * sequentially. Entries are written in the order they were reserved, regardless of the order in
+ * which conversions finish.
+ * <p>
+ * The zip is written by hand because {@link java.util.zip.ZipOutputStream} can't take entries that
+ * were compressed elsewhere. Zip64 isn't supported, so a pack is limited to 65535 entries and 4 GB.
+ * <p>
+ * The pack is written to a temporary file next to it, which only replaces the pack when it's closed
+ * successfully. {@link #abort} deletes it instead.
+ */
+public class PackWriter implements AutoCloseable {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int UTF8_NAMES = 0x0800;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final long MAX_OFFSET = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private final File packFile;
+    private final File tempFile;
+    private final boolean deflate;
+    private final FileChannel channel;
+    private final int dosTime;
+    private final int dosDate;
+
+    private final TreeMap<Integer, Entry> finished = new TreeMap<>();
+    private final List<Entry> written = new ArrayList<>();
+    private final HashSet<String> paths = new HashSet<>();
+    private int nextOrder = 0;
+    private int nextToWrite = 0;
+    private long offset = 0;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * @param deflate deflate entries, or store them uncompressed
+     */
+    public PackWriter(File packFile, boolean deflate) throws IOException {
+        this.packFile = packFile;
+        this.tempFile = new File(packFile.getPath() + ".tmp");
+        this.deflate = deflate;
+        this.channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        // All entries share the time the pack was started
+        Calendar now = Calendar.getInstance();
+        dosTime = now.get(Calendar.HOUR_OF_DAY) << 11 | now.get(Calendar.MINUTE) << 5 | now.get(Calendar.SECOND) / 2;
+        dosDate = (now.get(Calendar.YEAR) - 1980) << 9 | (now.get(Calendar.MONTH) + 1) << 5 | now.get(Calendar.DAY_OF_MONTH);
+    }
+
+    /**
+     * Reserves the next place in the pack for an entry at {@code path}, with / separators. A zip
+     * can't hold two entries with the same path, so only the first entry for a path can be written,
+     * later ones are {@link Entry#isDuplicate duplicates}.
+     */
+    public synchronized Entry newEntry(String path) {
+        return new Entry(this, nextOrder++, path, !paths.add(path));
+    }
+
+    private synchronized void finish(Entry entry) {
+        finished.put(entry.order, entry);
+        while (!finished.isEmpty() && finished.firstKey() == nextToWrite) {
+            Entry next = finished.pollFirstEntry().getValue();
+            if (next.data != null && failure == null) {
+                try {
+                    writeEntry(next);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            next.data = null;
+            nextToWrite++;
+        }
+    }
+
+    private void writeEntry(Entry entry) throws IOException {
+        if (written.size() == MAX_ENTRIES) {
+            throw new IOException("Too many entries for a pack, at most " + MAX_ENTRIES + " are supported");
+        }
+        if (offset + entry.name.length + entry.compressedSize + 30 > MAX_OFFSET) {
+            throw new IOException("Pack is too large, at most 4 GB are supported");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(30 + entry.name.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_HEADER)
+                .putShort((short) VERSION)
+                .putShort((short) UTF8_NAMES)
+                .putShort((short) entry.method)
+                .putShort((short) dosTime)
+                .putShort((short) dosDate)
+                .putInt((int) entry.crc)
+                .putInt(entry.compressedSize)
+                .putInt(entry.size)
+                .putShort((short) entry.name.length)
+                .putShort((short) 0)
+                .put(entry.name);
+        header.flip();
+
+        entry.offset = offset;
+        offset += writeFully(header);
+        offset += writeFully(ByteBuffer.wrap(entry.data, 0, entry.compressedSize));
+        written.add(entry);
+    }
+
+    private long writeFully(ByteBuffer buffer) throws IOException {
+        int count = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return count;
+    }
+
+    /**
+     * Writes the central directory and moves the pack into place. Every reserved entry must have
+     * been closed before. If that fails, the pack is aborted.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        boolean moved = false;
+        try {
+            writeDirectory();
+            channel.close();
+            Files.move(tempFile.toPath(), packFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            moved = true;
+        } finally {
+            if (moved) {
+                closed = true;
+            } else {
+                abort();
+            }
+        }
+    }
+
+    /**
+     * Closes the pack without writing it and deletes the temporary file, leaving any earlier pack
+     * alone. Does nothing once the pack is closed.
+     */
+    public synchronized void abort() {
+        if (closed) return;
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // The file is deleted anyway
+        }
+        tempFile.delete();
+    }
+
+    private void writeDirectory() throws IOException {
+        if (failure != null) throw failure;
+        if (nextToWrite != nextOrder) {
+            throw new IllegalStateException((nextOrder - nextToWrite) + " pack entries weren't closed");
+        }
+
+        long directoryOffset = offset;
+        for (Entry entry : written) {
+            ByteBuffer header = ByteBuffer.allocate(46 + entry.name.length).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(CENTRAL_HEADER)
+                    .putShort((short) VERSION)
+                    .putShort((short) VERSION)
+                    .putShort((short) UTF8_NAMES)
+                    .putShort((short) entry.method)
+                    .putShort((short) dosTime)
+                    .putShort((short) dosDate)
+                    .putInt((int) entry.crc)
+                    .putInt(entry.compressedSize)
+                    .putInt(entry.size)
+                    .putShort((short) entry.name.length)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putInt(0)
+                    .putInt((int) entry.offset)
+                    .put(entry.name);
+            header.flip();
+            offset += writeFully(header);
+        }
+        if (offset > MAX_OFFSET) {
+            throw new IOException("Pack is too large, at most 4 GB are supported");
+        }
+
+        ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(END_OF_CENTRAL_DIRECTORY)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) written.size())
+                .putShort((short) written.size())
+                .putInt((int) (offset - directoryOffset))
+                .putInt((int) directoryOffset)
+                .putShort((short) 0);
+        end.flip();
+        writeFully(end);
+    }
+
+    public int getEntryCount() {
+        return written.size();
+    }
+
+    /**
+     * A single file in the pack. Each instance is owned by one conversion, which compresses its data
+     * before handing it back to the pack.
+     */
+    public static class Entry implements AutoCloseable {
+        private final PackWriter pack;
+        private final int order;
+        private final String path;
+        private final boolean duplicate;
+        private final byte[] name;
+        private byte[] data;
+        private int method;
+        private int size;
+        private int compressedSize;
+        private long crc;
+        private long offset;
+        private boolean done;
+
+        private Entry(PackWriter pack, int order, String path, boolean duplicate) {
+            this.pack = pack;
+            this.order = order;
+            this.path = path;
+            this.duplicate = duplicate;
+            this.name = path.getBytes(StandardCharsets.UTF_8);
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Whether an earlier entry has the same path. Duplicates can only be closed, not written.
+         */
+        public boolean isDuplicate() {
+            return duplicate;
+        }
+
+        /**
+         * Compresses the data on the calling thread and queues it for the pack. Data that doesn't
+         * get smaller when deflated is stored as is.
+         *
+         * @throws IllegalStateException if the entry is a duplicate
+         */
+        public void write(byte[] bytes) {
+            int length = bytes.length;
+            if (duplicate) throw new IllegalStateException("Pack already has an entry " + path);
+            if (done) return;
+            CRC32 checksum = new CRC32();
+            checksum.update(bytes, 0, length);
+            crc = checksum.getValue();
+            size = length;
+
+            method = STORED;
+            data = bytes;
+            compressedSize = length;
+            if (pack.deflate) {
+                byte[] deflated = deflate(bytes, length);
+                if (deflated != null) {
+                    method = DEFLATED;
+                    data = deflated;
+                    compressedSize = deflated.length;
+                }
+            }
+            done = true;
+            pack.finish(this);
+        }
+
+        /**
+         * Returns the raw deflated data, or null if it's not smaller than the input.
+         */
+        private static byte[] deflate(byte[] bytes, int length) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(bytes, 0, length);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 64);
+                byte[] buffer = new byte[64 * 1024];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                    if (out.size() >= length) return null;
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        /**
+         * Releases the reserved place without writing anything if no data was written, so failed
+         * conversions don't hold back the entries after them.
+         */
+        @Override
+        public void close() {
+            if (done) return;
+            done = true;
+            pack.finish(this);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.wurmonline.womconverter;
+
+import com.wurmonline.womconverter.wom.MeshAnalysis;
+import com.wurmonline.womconverter.wom.WomModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects a {@link MeshAnalysis} of every mesh written and keeps them in a tab separated report,
+ * one line per mesh with the least cache friendly meshes first.
+ */
+public class RenderReporter {
+    private static final String HEADER = "file\tmesh\tvertices\ttriangles\tacmr\tatvr\tfetch_efficiency\tduplicate_ratio\tdegenerate_triangles";
+    private static final int WORST_MESHES = 10;
+    /**
+     * Meshes with an ATVR above this are listed as worst offenders.
+     */
+    private static final double ATVR_WARNING = 1.5;
+
+    private final File outFile;
+    private final Map<String, List<MeshAnalysis>> files = new TreeMap<>();
+
+    public RenderReporter(File outFile) {
+        this.outFile = outFile;
+    }
+
+    public void add(String key, WomModel model) {
+        List<MeshAnalysis> analyses = new ArrayList<>(model.meshes.size());
+        for (WomModel.Mesh mesh : model.meshes) {
+            analyses.add(MeshAnalysis.analyze(mesh));
+        }
+        synchronized (this) {
+            files.put(key, analyses);
+        }
+    }
+
+    public synchronized void remove(String key) {
+        files.remove(key);
+    }
+
+    private List<Row> sortedRows() {
+        List<Row> rows = new ArrayList<>();
+        files.forEach((file, analyses) -> analyses.forEach(analysis -> rows.add(new Row(file, analysis))));
+        rows.sort(Comparator.comparingDouble((Row row) -> row.analysis.atvr).reversed());
+        return rows;
+    }
+
+    /**
+     * Replaces the report file with everything collected so far.
+     */
+    public synchronized void write() throws IOException {
+        File temp = new File(outFile.getPath() + ".tmp");
+        try (PrintStream out = new PrintStream(temp, "UTF-8")) {
+            out.println(HEADER);
+            for (Row row : sortedRows()) {
+                MeshAnalysis a = row.analysis;
+                out.println(String.format(Locale.ROOT, "%s\t%s\t%d\t%d\t%.4f\t%.4f\t%.4f\t%.4f\t%d", row.file, a.mesh, a.vertices, a.triangles,
+                        a.acmr, a.atvr, a.fetchEfficiency, a.duplicateRatio, a.degenerateTriangles));
+            }
+        }
+        Files.move(temp.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Prints the meshes with the worst vertex cache efficiency, or with degenerate triangles.
+     */
+    public synchronized void printWorst(PrintStream out) {
+        List<Row> worst = new ArrayList<>();
+        for (Row row : sortedRows()) {
+            if (row.analysis.atvr > ATVR_WARNING || row.analysis.degenerateTriangles > 0) worst.add(row);
+            if (worst.size() == WORST_MESHES) break;
+        }
+        if (worst.isEmpty()) return;
+        out.println("Least render efficient meshes:");
+        for (Row row : worst) {
+            MeshAnalysis a = row.analysis;
+            out.println(String.format(Locale.ROOT, "  ATVR %.2f  ACMR %.2f  fetch %.2f  %d degenerate  %s: %s", a.atvr, a.acmr, a.fetchEfficiency, a.degenerateTriangles, row.file, a.mesh));
+        }
+    }
+
+    private static class Row {
+        final String file;
+        final MeshAnalysis analysis;
+
+        Row(String file, MeshAnalysis analysis) {
+            this.file = file;
+            this.analysis = analysis;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.wurmonline.womconverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * The texture files of the -texturedirs directories by file name, for checking the textures that
+ * materials reference. Materials only keep the file name of their texture, so a name has to be
+ * unique over all directories to say which file it means.
+ * <p>
+ * The directories are walked once, when the index is built, and only names are kept, so checks
+ * are a hash lookup and even trees with tens of thousands of textures cost little memory. Textures
+ * added later, while watching, aren't seen until the next run.
+ */
+public class TextureIndex {
+    /**
+     * What's wrong with a texture reference.
+     */
+    public enum Problem {
+        MISSING("missing"),
+        /**
+         * There's a file of that name, but only with different upper and lower case. Works on
+         * Windows, but not on Linux or inside packs.
+         */
+        WRONG_CASE("wrong case"),
+        /**
+         * More than one file has that name.
+         */
+        DUPLICATE("duplicate");
+
+        private final String description;
+
+        Problem(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    private final HashMap<String, Texture> byName = new HashMap<>();
+    private final HashMap<String, Texture> byLowerCaseName = new HashMap<>();
+    private final AtomicInteger checked = new AtomicInteger();
+    private final AtomicInteger missing = new AtomicInteger();
+    private final AtomicInteger wrongCase = new AtomicInteger();
+    private final AtomicInteger duplicate = new AtomicInteger();
+
+    private TextureIndex() {
+    }
+
+    /**
+     * Scans the directories and their subdirectories.
+     *
+     * @throws IllegalArgumentException if one isn't a directory
+     */
+    public static TextureIndex scan(List<File> directories) throws IOException {
+        TextureIndex index = new TextureIndex();
+        for (File directory : directories) {
+            if (!directory.isDirectory()) {
+                throw new IllegalArgumentException("Texture directory is not a valid directory: " + directory);
+            }
+            Path root = directory.toPath();
+            String prefix = directory.getName() + "/";
+            // find rather than walk, as it hands over the attributes it already read
+            try (Stream<Path> files = Files.find(root, Integer.MAX_VALUE, (path, attributes) -> attributes.isRegularFile())) {
+                files.forEach(path -> index.add(path.getFileName().toString(), prefix + root.relativize(path).toString().replace(File.separatorChar, '/')));
+            }
+        }
+        return index;
+    }
+
+    private void add(String name, String path) {
+        Texture texture = byName.get(name);
+        if (texture == null) {
+            texture = new Texture(path);
+            byName.put(name, texture);
+            byLowerCaseName.putIfAbsent(name.toLowerCase(Locale.ROOT), texture);
+        }
+        texture.count++;
+    }
+
+    /**
+     * Returns what's wrong with a reference to the texture file name, or null if it names exactly
+     * one file. Materials without a texture aren't checked.
+     */
+    public Problem check(String name) {
+        if (name.isEmpty()) return null;
+        checked.incrementAndGet();
+        Texture texture = byName.get(name);
+        if (texture == null) {
+            if (byLowerCaseName.containsKey(name.toLowerCase(Locale.ROOT))) {
+                wrongCase.incrementAndGet();
+                return Problem.WRONG_CASE;
+            }
+            missing.incrementAndGet();
+            return Problem.MISSING;
+        }
+        if (texture.count > 1) {
+            duplicate.incrementAndGet();
+            return Problem.DUPLICATE;
+        }
+        return null;
+    }
+
+    /**
+     * Describes a problem found by {@link #check} for the reports: the file that was meant when
+     * the case is wrong, the number of files for duplicates.
+     */
+    public String describe(String name, Problem problem) {
+        switch (problem) {
+            case WRONG_CASE:
+                return problem + ", found " + byLowerCaseName.get(name.toLowerCase(Locale.ROOT)).path;
+            case DUPLICATE:
+                Texture texture = byName.get(name);
+                return problem + ", " + texture.count + " files, first " + texture.path;
+            default:
+                return problem.toString();
+        }
+    }
+
+    public void printSummary(PrintStream out) {
+        out.println(String.format("Textures: %d references checked against %d files, %d missing, %d wrong case, %d duplicate",
+                checked.get(), byName.size(), missing.get(), wrongCase.get(), duplicate.get()));
+    }
+
+    /**
+     * A file name with the first place it was found, relative to the parent of its texture
+     * directory, and the number of files with that name.
+     */
+    private static class Texture {
+        final String path;
+        int count;
+
+        Texture(String path) {
+            this.path = path;
+        }
+    }
+}
@@ -1,52 +1,148 @@
 package com.wurmonline.womconverter.converters;
 
-import com.google.common.io.LittleEndianDataOutputStream;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.wurmonline.womconverter.ConversionFailedException;
-import com.wurmonline.womconverter.MatReporter;
-import org.lwjgl.BufferUtils;
+import com.wurmonline.womconverter.ConversionLog;
+import com.wurmonline.womconverter.wom.WomWriter;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.assimp.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
-import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static org.lwjgl.system.MemoryUtil.*;
 
 public class AssimpToWOMConverter {
 
     private static final String FLOATS_FORMAT = "%.4f";
+    private static final int MESH_BUFFER_SIZE = 64 * 1024;
 
-    public static void convert(File inputFile, File outputDirectory, boolean generateTangents, Properties forceMats, MatReporter matReport, boolean fixMeshNames) throws MalformedURLException, IOException, ConversionFailedException {
+    public static ConversionResult convert(File inputFile, File outputDirectory, ConversionOptions options) throws MalformedURLException, IOException, ConversionFailedException {
         if (inputFile == null || outputDirectory == null) {
             throw new IllegalArgumentException("Input file and/or output directory cannot be null");
         } else if (!outputDirectory.isDirectory()) {
             throw new IllegalArgumentException("Output directory is not a directory");
         }
 
-        System.out.println("------------------------------------------------------------------------");
-        System.out.println("Converting file: " + inputFile.getName() + ", output directory: " + outputDirectory.getAbsolutePath());
+        ConversionLog log = getLog(options);
+        int previousWarnings = log.getWarnings().size();
+        log.verbose("------------------------------------------------------------------------");
+        log.verbose("Converting file: %s, output directory: %s", inputFile.getName(), outputDirectory.getAbsolutePath());
 
-        String modelFileName = inputFile.getName();
-        modelFileName = modelFileName.substring(0, modelFileName.lastIndexOf('.'));
+        long start = System.nanoTime();
+        ConversionResult result = new ConversionResult(inputFile.getName());
+        result.metrics.inputBytes = inputFile.length();
 
-        int flags;
-        if (generateTangents) {
-            flags = Assimp.aiProcess_JoinIdenticalVertices | Assimp.aiProcess_Triangulate | Assimp.aiProcess_CalcTangentSpace;
-        } else {
-            flags = Assimp.aiProcess_JoinIdenticalVertices | Assimp.aiProcess_Triangulate;
+        try (SceneHandle scene = SceneHandle.importFile(inputFile, options.postProcessing);
+             WomWriter output = new WomWriter(getOutputFile(inputFile, outputDirectory))) {
+            write(output, scene, start, options, log, result);
+        }
+        result.metrics.totalNanos = System.nanoTime() - start;
+
+        log.info("File converted: %s, output directory: %s", inputFile.getName(), outputDirectory.getAbsolutePath());
+
+        result.warnings.addAll(log.getWarnings().subList(previousWarnings, log.getWarnings().size()));
+        return result;
+    }
+
+    /**
+     * Converts a model file and streams the WOM into {@code output} instead of a file next to it.
+     * The channel is left open.
+     */
+    public static ConversionResult convert(File inputFile, WritableByteChannel output, ConversionOptions options) throws IOException, ConversionFailedException {
+        if (inputFile == null || output == null) {
+            throw new IllegalArgumentException("Input file and/or output cannot be null");
+        }
+
+        ConversionLog log = getLog(options);
+        int previousWarnings = log.getWarnings().size();
+        log.verbose("------------------------------------------------------------------------");
+        log.verbose("Converting file: %s", inputFile.getName());
+
+        long start = System.nanoTime();
+        ConversionResult result = new ConversionResult(inputFile.getName());
+        result.metrics.inputBytes = inputFile.length();
+
+        try (SceneHandle scene = SceneHandle.importFile(inputFile, options.postProcessing)) {
+            write(new WomWriter(output), scene, start, options, log, result);
+        }
+        result.metrics.totalNanos = System.nanoTime() - start;
+
+        log.info("File converted: %s", inputFile.getName());
+
+        result.warnings.addAll(log.getWarnings().subList(previousWarnings, log.getWarnings().size()));
+        return result;
+    }
+
+    /**
+     * Converts a model held in memory, from the buffer's position to its limit, and streams the WOM
+     * into {@code output}. The channel is left open.
+     *
+     * @param formatHint extension of the format the model is in, like "obj" or "dae"
+     */
+    public static ConversionResult convert(ByteBuffer input, String formatHint, WritableByteChannel output, ConversionOptions options) throws IOException, ConversionFailedException {
+        if (input == null || output == null) {
+            throw new IllegalArgumentException("Input and/or output cannot be null");
+        }
+
+        ConversionLog log = getLog(options);
+        int previousWarnings = log.getWarnings().size();
+        log.verbose("------------------------------------------------------------------------");
+        log.verbose("Converting %d bytes of %s from memory", input.remaining(), formatHint);
+
+        long start = System.nanoTime();
+        ConversionResult result = new ConversionResult("memory." + formatHint);
+        result.metrics.inputBytes = input.remaining();
+
+        try (SceneHandle scene = SceneHandle.importMemory(input, formatHint, options.postProcessing)) {
+            write(new WomWriter(output), scene, start, options, log, result);
         }
-        AIScene scene = Assimp.aiImportFile(inputFile.getAbsolutePath(), flags);
+        result.metrics.totalNanos = System.nanoTime() - start;
+
+        result.warnings.addAll(log.getWarnings().subList(previousWarnings, log.getWarnings().size()));
+        return result;
+    }
 
-        if (scene == null) {
-            System.err.printf("Failed to load scene from %s - %s%n", inputFile.getName(), Assimp.aiGetErrorString());
-            return;
+    /**
+     * Converts a model held in memory and puts the WOM into {@code output}, advancing its position.
+     * Fails with an IOException if the WOM doesn't fit in the buffer's remaining space.
+     */
+    public static ConversionResult convert(ByteBuffer input, String formatHint, ByteBuffer output, ConversionOptions options) throws IOException, ConversionFailedException {
+        return convert(input, formatHint, new BufferChannel(output), options);
+    }
+
+    public static ConversionResult convert(byte[] input, String formatHint, WritableByteChannel output, ConversionOptions options) throws IOException, ConversionFailedException {
+        return convert(ByteBuffer.wrap(input), formatHint, output, options);
+    }
+
+    private static ConversionLog getLog(ConversionOptions options) {
+        return options.log != null ? options.log : new ConversionLog(ConversionLog.Level.QUIET, null);
+    }
+
+    private static void write(WomWriter output, SceneHandle scene, long start, ConversionOptions options, ConversionLog log, ConversionResult result) throws IOException, ConversionFailedException {
+        FileMetrics metrics = result.metrics;
+        metrics.importNanos = System.nanoTime() - start;
+
+        if (log.isVerbose()) {
+            log.verbose("Post-processing: " + options.postProcessing);
         }
 
-        LittleEndianDataOutputStream output = new LittleEndianDataOutputStream(new FileOutputStream(new File(outputDirectory, modelFileName + ".wom")));
+        writeScene(output, scene.getScene(), options, result, log);
+        output.flush();
+        metrics.writeNanos = output.getWriteNanos();
+        metrics.bytesWritten = output.getBytesWritten();
+    }
 
+    static void writeScene(WomWriter output, AIScene scene, ConversionOptions options, ConversionResult result, ConversionLog log) throws IOException, ConversionFailedException {
+        FileMetrics metrics = result.metrics;
         PointerBuffer materialsPointer = scene.mMaterials();
         AIMaterial[] materials = new AIMaterial[scene.mNumMaterials()];
         for (int i = 0; i < scene.mNumMaterials(); i++) {
@@ -59,45 +155,81 @@ public class AssimpToWOMConverter {
             meshes[i] = AIMesh.create(meshesPointer.get(i));
         }
 
+        // Resolved on first use and shared by every mesh with the same material
+        EncodedMaterial[] encodedMaterials = new EncodedMaterial[materials.length];
+
         int meshesCount = scene.mNumMeshes();
         output.writeInt(meshesCount);
 
         HashMap<String, Integer> meshCounter = null;
-        if (fixMeshNames) meshCounter = new HashMap<>();
+        if (options.fixMeshNames) meshCounter = new HashMap<>();
 
+        // Materials and names are settled in mesh order first, so they don't depend on how meshes are encoded
+        long resolveStart = System.nanoTime();
+        EncodedMaterial[] meshMaterials = new EncodedMaterial[meshesCount];
+        String[] nameOverrides = new String[meshesCount];
         for (int i = 0; i < meshesCount; i++) {
-            if (fixMeshNames) {
-                String tex = getMaterialTexture(materials[meshes[i].mMaterialIndex()]);
+            int materialIndex = meshes[i].mMaterialIndex();
+            if (encodedMaterials[materialIndex] == null) {
+                encodedMaterials[materialIndex] = EncodedMaterial.resolve(materials[materialIndex], options.forceMats);
+                result.materials.add(new ConversionResult.Material(encodedMaterials[materialIndex].name, encodedMaterials[materialIndex].texture));
+            }
+            meshMaterials[i] = encodedMaterials[materialIndex];
+
+            if (options.fixMeshNames) {
+                String tex = meshMaterials[i].texture;
                 if (tex.contains(".")) tex = tex.substring(0, tex.indexOf('.'));
                 int n = meshCounter.getOrDefault(tex, 1);
                 meshCounter.put(tex, n + 1);
-                writeMesh(output, meshes[i], String.format("%s-%d", tex, n));
-            } else {
-                writeMesh(output, meshes[i], null);
+                nameOverrides[i] = tex + "-" + n;
             }
+        }
+        metrics.materialNanos += System.nanoTime() - resolveStart;
 
-            int materialCount = 1;
-            output.writeInt(materialCount);
-            writeMaterial(output, materials[meshes[i].mMaterialIndex()], forceMats, matReport);
+        if (options.meshExecutor != null && meshesCount > 1) {
+            writeMeshesConcurrently(output, meshes, nameOverrides, meshMaterials, options.meshExecutor, metrics, log);
+        } else {
+            for (int i = 0; i < meshesCount; i++) {
+                long meshStart = System.nanoTime();
+                long writeStart = output.getWriteNanos();
+                FileMetrics.MeshMetrics meshMetrics = writeMesh(output, meshes[i], nameOverrides[i], log);
+                meshMetrics.encodeNanos = System.nanoTime() - meshStart - (output.getWriteNanos() - writeStart);
+                metrics.meshNanos += meshMetrics.encodeNanos;
+                metrics.meshes.add(meshMetrics);
+
+                long materialStart = System.nanoTime();
+                writeStart = output.getWriteNanos();
+                int materialCount = 1;
+                output.writeInt(materialCount);
+                writeMaterial(output, meshMaterials[i], log);
+                metrics.materialNanos += System.nanoTime() - materialStart - (output.getWriteNanos() - writeStart);
+            }
         }
 
         ArrayList<AINode> nodesToWrite = new ArrayList<>();
 
         AINode root = scene.mRootNode();
         if (root != null) {
-            System.out.println(String.format("Checking nodes - root: %s (%d children / %d meshes)", root.mName().dataString(), root.mNumChildren(), root.mNumMeshes()));
+            if (log.isVerbose()) {
+                log.verbose("Checking nodes - root: %s (%d children / %d meshes)", root.mName().dataString(), root.mNumChildren(), root.mNumMeshes());
+            }
             if (root.mChildren() != null) {
                 for (int i = 0; i < root.mNumChildren(); i++) {
                     AINode child = AINode.create(Objects.requireNonNull(root.mChildren()).get(i));
                     boolean write = child.mName().dataString().startsWith("wom-");
-                    System.out.println(String.format("%s %s (%d children / %d meshes)", write ? "+" : "-", child.mName().dataString(), child.mNumChildren(), child.mNumMeshes()));
                     if (write) {
                         nodesToWrite.add(child);
-                        AIMatrix4x4 trans = child.mTransformation();
-                        System.out.println(String.format(" -> %f %f %f %f", trans.a1(), trans.a2(), trans.a3(), trans.a4()));
-                        System.out.println(String.format(" -> %f %f %f %f", trans.b1(), trans.b2(), trans.b3(), trans.b4()));
-                        System.out.println(String.format(" -> %f %f %f %f", trans.c1(), trans.c2(), trans.c3(), trans.c4()));
-                        System.out.println(String.format(" -> %f %f %f %f", trans.d1(), trans.d2(), trans.d3(), trans.d4()));
+                    }
+                    if (log.isVerbose()) {
+                        log.verbose("%s %s (%d children / %d meshes)", write ? "+" : "-", child.mName().dataString(), child.mNumChildren(), child.mNumMeshes());
+                        if (write) {
+                            AIMatrix4x4 trans = child.mTransformation();
+                            log.verbose(" -> %f %f %f %f%n -> %f %f %f %f%n -> %f %f %f %f%n -> %f %f %f %f",
+                                    trans.a1(), trans.a2(), trans.a3(), trans.a4(),
+                                    trans.b1(), trans.b2(), trans.b3(), trans.b4(),
+                                    trans.c1(), trans.c2(), trans.c3(), trans.c4(),
+                                    trans.d1(), trans.d2(), trans.d3(), trans.d4());
+                        }
                     }
                 }
             }
@@ -105,8 +237,8 @@ public class AssimpToWOMConverter {
 
         output.writeInt(nodesToWrite.size());
         for (AINode node : nodesToWrite) {
-            writeString(output, "");
-            writeString(output, node.mName().dataString().substring(4));
+            output.writeString("");
+            output.writeString(node.mName().dataString().substring(4));
             output.write(0);
             AIMatrix4x4 trans = node.mTransformation();
             output.writeFloat(trans.a1());
@@ -129,19 +261,81 @@ public class AssimpToWOMConverter {
         }
 
         for (int i = 0; i < meshesCount; i++) {
-            boolean hasSkinning = false;
+            long skinStart = System.nanoTime();
+            long writeStart = output.getWriteNanos();
+            BoneWeights skin = options.maxBoneWeights > 0 ? BoneWeights.invert(meshes[i], options.maxBoneWeights) : null;
+            boolean hasSkinning = skin != null;
             output.write(hasSkinning ? 1 : 0);
-            // skinning exporting here
+            if (hasSkinning) {
+                skin.writeTo(output);
+                if (log.isVerbose()) {
+                    log.verbose("Skinning of %s:\t%d bones, up to %d per vertex, %d vertices without weights",
+                            metrics.meshes.get(i).name, skin.boneNames.length, skin.influences, skin.unweightedVertices);
+                }
+                metrics.meshNanos += System.nanoTime() - skinStart - (output.getWriteNanos() - writeStart);
+            }
         }
+    }
 
-        output.close();
+    /**
+     * Encodes each mesh and its material block into its own buffer on the executor, then writes the
+     * buffers in mesh order. Log messages of each mesh are kept with it, so both the output and the
+     * log match sequential encoding.
+     */
+    private static void writeMeshesConcurrently(WomWriter output, AIMesh[] meshes, String[] nameOverrides, EncodedMaterial[] meshMaterials, ExecutorService executor, FileMetrics metrics, ConversionLog log) throws IOException, ConversionFailedException {
+        List<Future<EncodedMesh>> encoded = new ArrayList<>(meshes.length);
+        for (int i = 0; i < meshes.length; i++) {
+            AIMesh mesh = meshes[i];
+            String nameOverride = nameOverrides[i];
+            EncodedMaterial material = meshMaterials[i];
+            encoded.add(executor.submit(() -> encodeMesh(mesh, nameOverride, material, log.newBuffer())));
+        }
 
-        System.out.println("File converted: " + inputFile.getName() + ", output directory: " + outputDirectory.getAbsolutePath());
+        // Every task has to finish before returning, as they all read the scene
+        Throwable failure = null;
+        for (Future<EncodedMesh> future : encoded) {
+            try {
+                EncodedMesh mesh = Uninterruptibles.getUninterruptibly(future);
+                if (failure != null) continue;
+                log.append(mesh.log);
+                output.write(mesh.bytes);
+                metrics.meshNanos += mesh.metrics.encodeNanos;
+                metrics.materialNanos += mesh.materialNanos;
+                metrics.meshes.add(mesh.metrics);
+            } catch (ExecutionException e) {
+                if (failure == null) failure = e.getCause();
+            }
+        }
 
-        if (matReport != null) matReport.reportFile(inputFile.getName());
+        if (failure instanceof IOException) throw (IOException) failure;
+        if (failure instanceof ConversionFailedException) throw (ConversionFailedException) failure;
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
     }
 
-    private static void writeMesh(LittleEndianDataOutputStream output, AIMesh mesh, String nameOverride) throws IOException, ConversionFailedException {
+    private static EncodedMesh encodeMesh(AIMesh mesh, String nameOverride, EncodedMaterial material, ConversionLog log) throws IOException, ConversionFailedException {
+        MeshBuffer buffer = new MeshBuffer();
+        WomWriter output = new WomWriter(buffer, MESH_BUFFER_SIZE);
+
+        long meshStart = System.nanoTime();
+        FileMetrics.MeshMetrics meshMetrics = writeMesh(output, mesh, nameOverride, log);
+        long materialStart = System.nanoTime();
+        meshMetrics.encodeNanos = materialStart - meshStart;
+
+        int materialCount = 1;
+        output.writeInt(materialCount);
+        writeMaterial(output, material, log);
+        output.flush();
+        return new EncodedMesh(buffer.toByteArray(), meshMetrics, System.nanoTime() - materialStart, log);
+    }
+
+    public static File getOutputFile(File inputFile, File outputDirectory) {
+        String modelFileName = inputFile.getName();
+        modelFileName = modelFileName.substring(0, modelFileName.lastIndexOf('.'));
+        return new File(outputDirectory, modelFileName + ".wom");
+    }
+
+    static FileMetrics.MeshMetrics writeMesh(WomWriter output, AIMesh mesh, String nameOverride, ConversionLog log) throws IOException, ConversionFailedException {
         boolean hasTangents = mesh.mTangents() != null;
         output.write(hasTangents ? 1 : 0);
         boolean hasBinormal = mesh.mBitangents() != null;
@@ -152,165 +346,197 @@ public class AssimpToWOMConverter {
         String name = mesh.mName().dataString();
 
         if (nameOverride != null) {
-            writeString(output, nameOverride);
-            System.out.println("Mesh name override:\t" + nameOverride);
+            output.writeString(nameOverride);
         } else {
-            writeString(output, name);
-            System.out.println("Mesh name:\t" + name);
+            output.writeString(name);
         }
 
-        System.out.println("Has tangents:\t" + hasTangents);
-        System.out.println("Has binormals:\t" + hasBinormal);
-        System.out.println("Has colors:\t" + hasVertexColor);
-
         int verticesCount = mesh.mNumVertices();
         output.writeInt(verticesCount);
-        System.out.println("Vertices:\t" + verticesCount);
+
+        long meshAddress = mesh.address();
+        long vertices = memGetAddress(meshAddress + AIMesh.MVERTICES);
+        long normals = memGetAddress(meshAddress + AIMesh.MNORMALS);
+        long uvs = memGetAddress(meshAddress + AIMesh.MTEXTURECOORDS);
+        long colors = memGetAddress(meshAddress + AIMesh.MCOLORS);
+        long tangents = memGetAddress(meshAddress + AIMesh.MTANGENTS);
+        long binormals = memGetAddress(meshAddress + AIMesh.MBITANGENTS);
+
+        if (normals == NULL)
+            throw new ConversionFailedException(String.format("mesh %s has no normals", name));
+        if (uvs == NULL)
+            throw new ConversionFailedException(String.format("mesh %s has no texture coordinates", name));
+
+        int vertexBytes = 8 * 4;
+        if (hasVertexColor) vertexBytes += 3 * 4;
+        if (hasTangents) vertexBytes += 3 * 4;
+        if (hasBinormal) vertexBytes += 3 * 4;
 
         for (int i = 0; i < verticesCount; i++) {
-            AIVector3D vertex = mesh.mVertices().get(i);
-            output.writeFloat(vertex.x());
-            output.writeFloat(vertex.y());
-            output.writeFloat(vertex.z());
+            ByteBuffer buffer = output.reserve(vertexBytes);
+            long vec3 = (long) i * AIVector3D.SIZEOF;
 
-            AIVector3D normal = mesh.mNormals().get(i);
-            output.writeFloat(normal.x());
-            output.writeFloat(normal.y());
-            output.writeFloat(normal.z());
+            putVector3(buffer, vertices + vec3);
+            putVector3(buffer, normals + vec3);
 
-            AIVector3D uv = mesh.mTextureCoords(0).get(i);
-            output.writeFloat(uv.x());
-            output.writeFloat(1 - uv.y());
+            putFloat(buffer, memGetFloat(uvs + vec3));
+            putFloat(buffer, 1 - memGetFloat(uvs + vec3 + 4));
 
             if (hasVertexColor) {
-                AIColor4D.Buffer color = mesh.mColors(i);
-                output.writeFloat(color.r());
-                output.writeFloat(color.g());
-                output.writeFloat(color.b());
+                putVector3(buffer, colors + (long) i * AIColor4D.SIZEOF);
             }
 
             if (hasTangents) {
-                AIVector3D tangent = mesh.mTangents().get(i);
-                output.writeFloat(tangent.x());
-                output.writeFloat(tangent.y());
-                output.writeFloat(tangent.z());
+                putVector3(buffer, tangents + vec3);
             }
 
             if (hasBinormal) {
-                AIVector3D binormal = mesh.mBitangents().get(i);
-                output.writeFloat(binormal.x());
-                output.writeFloat(binormal.y());
-                output.writeFloat(binormal.z());
+                putVector3(buffer, binormals + vec3);
             }
         }
 
         int facesCount = mesh.mNumFaces();
-        System.out.println("Faces:\t\t" + facesCount);
-        System.out.println("Triangles:\t" + (facesCount * 3));
 
-        List<int[]> goodFaces = new ArrayList<>();
+        long faces = memGetAddress(meshAddress + AIMesh.MFACES);
+        int goodFaces = 0;
         int skipped = 0;
 
         for (int i = 0; i < facesCount; i++) {
-            AIFace face = mesh.mFaces().get(i);
-            if (face.mNumIndices() != 3) {
+            long face = faces + (long) i * AIFace.SIZEOF;
+            if (memGetInt(face + AIFace.MNUMINDICES) != 3) {
                 skipped++;
                 continue;
             }
-            if (face.mIndices().get(0) > Short.MAX_VALUE || face.mIndices().get(1) > Short.MAX_VALUE || face.mIndices().get(2) > Short.MAX_VALUE)
+            long indices = memGetAddress(face + AIFace.MINDICES);
+            if (memGetInt(indices) > Short.MAX_VALUE || memGetInt(indices + 4) > Short.MAX_VALUE || memGetInt(indices + 8) > Short.MAX_VALUE)
                 throw new ConversionFailedException(String.format("mesh %s has too many vertices and can't be represented correctly in WOM", name));
-            goodFaces.add(new int[]{face.mIndices().get(0), face.mIndices().get(1), face.mIndices().get(2)});
+            goodFaces++;
         }
 
         if (skipped > 0)
-            System.err.println(String.format("Warning: mesh %s has %d face%s that's not a triangle, this doesn't work in wom", name, skipped, skipped > 1 ? "s" : ""));
+            log.warn("Warning: mesh %s has %d face%s that's not a triangle, this doesn't work in wom", name, skipped, skipped > 1 ? "s" : "");
+
+        output.writeInt(goodFaces * 3);
+
+        for (int i = 0; i < facesCount; i++) {
+            long face = faces + (long) i * AIFace.SIZEOF;
+            if (memGetInt(face + AIFace.MNUMINDICES) != 3) continue;
+            long indices = memGetAddress(face + AIFace.MINDICES);
+            output.reserve(6)
+                    .putShort((short) memGetInt(indices))
+                    .putShort((short) memGetInt(indices + 4))
+                    .putShort((short) memGetInt(indices + 8));
+        }
 
-        output.writeInt(goodFaces.size() * 3);
+        if (log.isVerbose()) {
+            if (nameOverride != null) {
+                log.verbose("Mesh name override:\t" + nameOverride);
+            } else {
+                log.verbose("Mesh name:\t" + name);
+            }
+            log.verbose("Has tangents:\t" + hasTangents);
+            log.verbose("Has binormals:\t" + hasBinormal);
+            log.verbose("Has colors:\t" + hasVertexColor);
+            log.verbose("Vertices:\t" + verticesCount);
+            log.verbose("Faces:\t\t" + facesCount);
+            log.verbose("Triangles:\t" + (facesCount * 3));
+            log.verbose("");
+        }
 
-        for (int[] face : goodFaces) {
-            output.writeShort(face[0]);
-            output.writeShort(face[1]);
-            output.writeShort(face[2]);
+        FileMetrics.MeshMetrics metrics = new FileMetrics.MeshMetrics(nameOverride != null ? nameOverride : name);
+        metrics.vertices = verticesCount;
+        metrics.triangles = goodFaces;
+        metrics.skippedFaces = skipped;
+        return metrics;
+    }
+
+    private static void putVector3(ByteBuffer buffer, long address) {
+        putFloat(buffer, memGetFloat(address));
+        putFloat(buffer, memGetFloat(address + 4));
+        putFloat(buffer, memGetFloat(address + 8));
+    }
+
+    private static void putFloat(ByteBuffer buffer, float value) {
+        buffer.putInt(Float.floatToIntBits(value));
+    }
+
+    static void writeMaterial(WomWriter output, EncodedMaterial material, ConversionLog log) throws IOException {
+        material.writeTo(output);
+
+        if (log.isVerbose()) {
+            log.verbose("Material name:\t" + material.name);
+            log.verbose("Texture path:\t" + material.texture);
+            log.verbose("Emissive:\t" + formatColor(material.emissive));
+            log.verbose("Shininess:\t" + String.format(FLOATS_FORMAT, material.shininess));
+            log.verbose("Specular:\t" + formatColor(material.specular));
+            log.verbose("Transparency:\t" + formatColor(material.transparency));
+            log.verbose("");
         }
+    }
 
-        System.out.println("");
+    private static String formatColor(float[] color) {
+        return String.format(FLOATS_FORMAT + "\t" + FLOATS_FORMAT + "\t" + FLOATS_FORMAT + "\t" + FLOATS_FORMAT, color[0], color[1], color[2], color[3]);
     }
 
-    private static String getMaterialTexture(AIMaterial material) {
-        AIString textureNameNative = AIString.create();
-        Assimp.aiGetMaterialString(material, Assimp._AI_MATKEY_TEXTURE_BASE, Assimp.aiTextureType_DIFFUSE, 0, textureNameNative);
-        String textureName = textureNameNative.dataString();
-        return textureName.substring(Math.max(textureName.lastIndexOf("/"), textureName.lastIndexOf("\\")) + 1);
+    private static class EncodedMesh {
+        final byte[] bytes;
+        final FileMetrics.MeshMetrics metrics;
+        final long materialNanos;
+        final ConversionLog log;
+
+        EncodedMesh(byte[] bytes, FileMetrics.MeshMetrics metrics, long materialNanos, ConversionLog log) {
+            this.bytes = bytes;
+            this.metrics = metrics;
+            this.materialNanos = materialNanos;
+            this.log = log;
+        }
     }
 
-    private static void writeMaterial(LittleEndianDataOutputStream output, AIMaterial material, Properties forceMats, MatReporter matReport) throws IOException {
-        String textureName = getMaterialTexture(material);
-        writeString(output, textureName);
-
-        AIString materialNameNative = AIString.create();
-        Assimp.aiGetMaterialString(material, Assimp.AI_MATKEY_NAME, 0, 0, materialNameNative);
-        String materialName = materialNameNative.dataString();
-        if (forceMats.containsKey(textureName))
-            materialName = forceMats.getProperty(textureName);
-        writeString(output, materialName);
-
-        if (matReport != null)
-            matReport.addMat(materialName, textureName);
-
-        System.out.println("Material name:\t" + materialName);
-        System.out.println("Texture path:\t" + textureName);
-
-        boolean isEnabled = true;
-        output.write(isEnabled ? 1 : 0);
-
-        boolean propertyExists = true;
-
-        output.write(propertyExists ? 1 : 0);
-        AIColor4D emissive = AIColor4D.create();
-        Assimp.aiGetMaterialColor(material, Assimp.AI_MATKEY_COLOR_EMISSIVE, 0, 0, emissive);
-        System.out.println("Emissive:\t" + String.format(FLOATS_FORMAT, emissive.r()) + "\t" + String.format(FLOATS_FORMAT, emissive.g()) + "\t" + String.format(FLOATS_FORMAT, emissive.b()) + "\t" + String.format(FLOATS_FORMAT, emissive.a()));
-        output.writeFloat(emissive.r());
-        output.writeFloat(emissive.g());
-        output.writeFloat(emissive.b());
-        output.writeFloat(emissive.a());
-
-        output.write(propertyExists ? 1 : 0);
-        FloatBuffer shininessBuffer = BufferUtils.createFloatBuffer(1);
-        IntBuffer valuesCountBuffer = BufferUtils.createIntBuffer(1);
-        valuesCountBuffer.put(1);
-        valuesCountBuffer.rewind();
-        Assimp.aiGetMaterialFloatArray(material, Assimp.AI_MATKEY_SHININESS, 0, 0, shininessBuffer, valuesCountBuffer);
-        float shininess = shininessBuffer.get(0);
-        System.out.println("Shininess:\t" + String.format(FLOATS_FORMAT, shininess));
-        output.writeFloat(shininess);
-
-        output.write(propertyExists ? 1 : 0);
-        AIColor4D specular = AIColor4D.create();
-        Assimp.aiGetMaterialColor(material, Assimp.AI_MATKEY_COLOR_SPECULAR, 0, 0, specular);
-        System.out.println("Specular:\t" + String.format(FLOATS_FORMAT, specular.r()) + "\t" + String.format(FLOATS_FORMAT, specular.g()) + "\t" + String.format(FLOATS_FORMAT, specular.b()) + "\t" + String.format(FLOATS_FORMAT, specular.a()));
-        output.writeFloat(specular.r());
-        output.writeFloat(specular.g());
-        output.writeFloat(specular.b());
-        output.writeFloat(specular.a());
-
-        output.write(propertyExists ? 1 : 0);
-        AIColor4D transparency = AIColor4D.create();
-        Assimp.aiGetMaterialColor(material, Assimp.AI_MATKEY_COLOR_TRANSPARENT, 0, 0, transparency);
-        System.out.println("Transparency:\t" + String.format(FLOATS_FORMAT, transparency.r()) + "\t" + String.format(FLOATS_FORMAT, transparency.g()) + "\t" + String.format(FLOATS_FORMAT, transparency.b()) + "\t" + String.format(FLOATS_FORMAT, transparency.a()));
-        output.writeFloat(transparency.r());
-        output.writeFloat(transparency.g());
-        output.writeFloat(transparency.b());
-        output.writeFloat(transparency.a());
-
-        System.out.println("");
+    /**
+     * Collects a mesh encoded on another thread.
+     */
+    private static class MeshBuffer extends ByteArrayOutputStream implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            write(src.array(), src.arrayOffset() + src.position(), count);
+            src.position(src.limit());
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
     }
 
-    private static void writeString(LittleEndianDataOutputStream output, String str) throws IOException {
-        byte[] chars = str.getBytes("UTF-8");
+    /**
+     * Writes into a caller's buffer, failing instead of growing when it's full.
+     */
+    private static class BufferChannel implements WritableByteChannel {
+        private final ByteBuffer target;
+
+        BufferChannel(ByteBuffer target) {
+            this.target = target;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int count = src.remaining();
+            if (count > target.remaining()) {
+                throw new IOException("Output buffer is too small, " + target.remaining() + " bytes left for " + count + " more");
+            }
+            target.put(src);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
 
-        output.writeInt(chars.length);
-        for (int i = 0; i < chars.length; i++) {
-            output.writeByte(chars[i]);
+        @Override
+        public void close() {
         }
     }
 
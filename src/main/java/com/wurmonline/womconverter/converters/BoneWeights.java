@@ -0,0 +1,124 @@
+package com.wurmonline.womconverter.converters;
+
+import com.wurmonline.womconverter.wom.WomWriter;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.assimp.AIBone;
+import org.lwjgl.assimp.AIMesh;
+import org.lwjgl.assimp.AIVertexWeight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Bone weights of a mesh per vertex, inverted from the per-bone weight lists Assimp keeps and
+ * reduced to the strongest influences of each vertex, renormalized to add up to 1. The tables are
+ * flat arrays of {@code influences} slots per vertex, so nothing is allocated per vertex.
+ * <p>
+ * Written after the skinning flag of a mesh when it's set, in the layout described on
+ * {@link com.wurmonline.womconverter.wom.WomModel.Skin}.
+ */
+class BoneWeights {
+    final String[] boneNames;
+    final float[] offsetMatrices;
+    final int influences;
+    final int[] bones;
+    final float[] weights;
+    /**
+     * Vertices no bone has any weight on.
+     */
+    final int unweightedVertices;
+
+    private BoneWeights(String[] boneNames, float[] offsetMatrices, int influences, int[] bones, float[] weights, int unweightedVertices) {
+        this.boneNames = boneNames;
+        this.offsetMatrices = offsetMatrices;
+        this.influences = influences;
+        this.bones = bones;
+        this.weights = weights;
+        this.unweightedVertices = unweightedVertices;
+    }
+
+    /**
+     * Returns the weights of the mesh with at most {@code influences} bones per vertex, or null if
+     * the mesh has no bones.
+     */
+    static BoneWeights invert(AIMesh mesh, int influences) {
+        int boneCount = mesh.mNumBones();
+        PointerBuffer bonePointers = mesh.mBones();
+        if (boneCount == 0 || bonePointers == null) return null;
+
+        int vertexCount = mesh.mNumVertices();
+        String[] boneNames = new String[boneCount];
+        float[] offsetMatrices = new float[boneCount * 16];
+        int[] bones = new int[vertexCount * influences];
+        float[] weights = new float[vertexCount * influences];
+
+        for (int b = 0; b < boneCount; b++) {
+            long bone = bonePointers.get(b);
+            boneNames[b] = AIBone.nmName(bone).dataString();
+            for (int i = 0; i < 16; i++) {
+                offsetMatrices[b * 16 + i] = memGetFloat(bone + AIBone.MOFFSETMATRIX + i * 4);
+            }
+
+            int weightCount = memGetInt(bone + AIBone.MNUMWEIGHTS);
+            long boneWeights = memGetAddress(bone + AIBone.MWEIGHTS);
+            for (int i = 0; i < weightCount; i++) {
+                long weight = boneWeights + (long) i * AIVertexWeight.SIZEOF;
+                int vertex = memGetInt(weight + AIVertexWeight.MVERTEXID);
+                float value = memGetFloat(weight + AIVertexWeight.MWEIGHT);
+                if (value > 0 && vertex >= 0 && vertex < vertexCount) {
+                    insert(bones, weights, vertex * influences, influences, b, value);
+                }
+            }
+        }
+
+        int unweighted = 0;
+        for (int start = 0; start < weights.length; start += influences) {
+            float sum = 0;
+            for (int i = start; i < start + influences; i++) sum += weights[i];
+            if (sum == 0) {
+                unweighted++;
+                continue;
+            }
+            for (int i = start; i < start + influences; i++) weights[i] /= sum;
+        }
+
+        return new BoneWeights(boneNames, offsetMatrices, influences, bones, weights, unweighted);
+    }
+
+    /**
+     * Adds a weight to the slots of a vertex, which are kept sorted strongest first. A weight
+     * weaker than every kept one is dropped, and so is the weakest when the slots are full.
+     */
+    private static void insert(int[] bones, float[] weights, int start, int influences, int bone, float weight) {
+        int slot = start + influences - 1;
+        if (weights[slot] >= weight) return;
+        while (slot > start && weights[slot - 1] < weight) {
+            bones[slot] = bones[slot - 1];
+            weights[slot] = weights[slot - 1];
+            slot--;
+        }
+        bones[slot] = bone;
+        weights[slot] = weight;
+    }
+
+    void writeTo(WomWriter output) throws IOException {
+        output.writeInt(boneNames.length);
+        for (int b = 0; b < boneNames.length; b++) {
+            output.writeString(boneNames[b]);
+            for (int i = 0; i < 16; i++) {
+                output.writeFloat(offsetMatrices[b * 16 + i]);
+            }
+        }
+
+        output.writeInt(influences);
+        int vertexBytes = influences * 8;
+        for (int start = 0; start < bones.length; start += influences) {
+            ByteBuffer buffer = output.reserve(vertexBytes);
+            for (int i = start; i < start + influences; i++) {
+                buffer.putInt(bones[i]).putInt(Float.floatToIntBits(weights[i]));
+            }
+        }
+    }
+}
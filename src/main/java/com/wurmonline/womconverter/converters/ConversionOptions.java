@@ -0,0 +1,36 @@
+package com.wurmonline.womconverter.converters;
+
+import com.wurmonline.womconverter.ConversionLog;
+
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Options of a single conversion through {@link AssimpToWOMConverter}.
+ */
+public class ConversionOptions {
+    public PostProcessing postProcessing = PostProcessing.profile("default");
+    /**
+     * Material names to use instead of the model's, by texture file name.
+     */
+    public Properties forceMats = new Properties();
+    /**
+     * Name meshes after their texture instead of keeping the model's names.
+     */
+    public boolean fixMeshNames = false;
+    /**
+     * Exports the bone weights of rigged meshes, keeping at most this many bones per vertex. 0 leaves
+     * skinning out.
+     */
+    public int maxBoneWeights = 0;
+    /**
+     * Encodes the meshes of a scene concurrently on this executor when set. The output is the same
+     * as when they're encoded one after another.
+     */
+    public ExecutorService meshExecutor = null;
+    /**
+     * Where progress and warnings of this conversion go. When null nothing is printed, and
+     * warnings are only returned in the {@link ConversionResult}.
+     */
+    public ConversionLog log = null;
+}
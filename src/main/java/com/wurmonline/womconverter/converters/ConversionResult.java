@@ -0,0 +1,34 @@
+package com.wurmonline.womconverter.converters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What a conversion produced: the meshes and materials written, any warnings and the timings.
+ */
+public class ConversionResult {
+    public final FileMetrics metrics;
+    /**
+     * Each distinct material written, in order of first use.
+     */
+    public final List<Material> materials = new ArrayList<>();
+    public final List<String> warnings = new ArrayList<>();
+
+    public ConversionResult(String name) {
+        this.metrics = new FileMetrics(name);
+    }
+
+    public List<FileMetrics.MeshMetrics> getMeshes() {
+        return metrics.meshes;
+    }
+
+    public static class Material {
+        public final String name;
+        public final String texture;
+
+        public Material(String name, String texture) {
+            this.name = name;
+            this.texture = texture;
+        }
+    }
+}
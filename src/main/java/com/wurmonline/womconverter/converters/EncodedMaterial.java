@@ -0,0 +1,117 @@
+package com.wurmonline.womconverter.converters;
+
+import com.wurmonline.womconverter.wom.WomWriter;
+import org.lwjgl.assimp.AIColor4D;
+import org.lwjgl.assimp.AIMaterial;
+import org.lwjgl.assimp.AIString;
+import org.lwjgl.assimp.Assimp;
+import org.lwjgl.system.MemoryStack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * A material resolved once per scene and encoded into its WOM material block, with the texture
+ * path stripped and any -forcemats override applied. Meshes that share the material reuse the
+ * block as is.
+ */
+class EncodedMaterial {
+    final String texture;
+    final String name;
+    final float[] emissive;
+    final float shininess;
+    final float[] specular;
+    final float[] transparency;
+    private final byte[] encoded;
+
+    private EncodedMaterial(String texture, String name, float[] emissive, float shininess, float[] specular, float[] transparency) {
+        this.texture = texture;
+        this.name = name;
+        this.emissive = emissive;
+        this.shininess = shininess;
+        this.specular = specular;
+        this.transparency = transparency;
+        this.encoded = encode();
+    }
+
+    static EncodedMaterial resolve(AIMaterial material, Properties forceMats) {
+        // calloc, as properties the material doesn't have are left untouched and read as zero
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            AIString string = AIString.callocStack(stack);
+            String texture = getTexture(material, string);
+
+            string.clear();
+            Assimp.aiGetMaterialString(material, Assimp.AI_MATKEY_NAME, 0, 0, string);
+            String name = forceMats.getProperty(texture, string.dataString());
+
+            AIColor4D color = AIColor4D.callocStack(stack);
+            float[] emissive = getColor(material, Assimp.AI_MATKEY_COLOR_EMISSIVE, color);
+
+            FloatBuffer shininess = stack.callocFloat(1);
+            Assimp.aiGetMaterialFloatArray(material, Assimp.AI_MATKEY_SHININESS, 0, 0, shininess, stack.ints(1));
+
+            float[] specular = getColor(material, Assimp.AI_MATKEY_COLOR_SPECULAR, color);
+            float[] transparency = getColor(material, Assimp.AI_MATKEY_COLOR_TRANSPARENT, color);
+            return new EncodedMaterial(texture, name, emissive, shininess.get(0), specular, transparency);
+        }
+    }
+
+    /**
+     * File name of the diffuse texture, without its path.
+     */
+    static String getTexture(AIMaterial material) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            return getTexture(material, AIString.callocStack(stack));
+        }
+    }
+
+    private static String getTexture(AIMaterial material, AIString string) {
+        Assimp.aiGetMaterialString(material, Assimp._AI_MATKEY_TEXTURE_BASE, Assimp.aiTextureType_DIFFUSE, 0, string);
+        String textureName = string.dataString();
+        return textureName.substring(Math.max(textureName.lastIndexOf("/"), textureName.lastIndexOf("\\")) + 1);
+    }
+
+    private static float[] getColor(AIMaterial material, String key, AIColor4D color) {
+        color.clear();
+        Assimp.aiGetMaterialColor(material, key, 0, 0, color);
+        return new float[]{color.r(), color.g(), color.b(), color.a()};
+    }
+
+    private byte[] encode() {
+        byte[] textureBytes = texture.getBytes(StandardCharsets.UTF_8);
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        // strings, enabled flag, then emissive, shininess, specular and transparency each after an exists flag
+        int size = 4 + textureBytes.length + 4 + nameBytes.length + 1 + (1 + 16) + (1 + 4) + (1 + 16) + (1 + 16);
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(textureBytes.length).put(textureBytes);
+        buffer.putInt(nameBytes.length).put(nameBytes);
+
+        boolean isEnabled = true;
+        buffer.put((byte) (isEnabled ? 1 : 0));
+
+        boolean propertyExists = true;
+        buffer.put((byte) (propertyExists ? 1 : 0));
+        putFloats(buffer, emissive);
+        buffer.put((byte) (propertyExists ? 1 : 0));
+        buffer.putInt(Float.floatToIntBits(shininess));
+        buffer.put((byte) (propertyExists ? 1 : 0));
+        putFloats(buffer, specular);
+        buffer.put((byte) (propertyExists ? 1 : 0));
+        putFloats(buffer, transparency);
+        return buffer.array();
+    }
+
+    private static void putFloats(ByteBuffer buffer, float[] values) {
+        for (float value : values) {
+            buffer.putInt(Float.floatToIntBits(value));
+        }
+    }
+
+    void writeTo(WomWriter output) throws IOException {
+        output.write(encoded);
+    }
+}
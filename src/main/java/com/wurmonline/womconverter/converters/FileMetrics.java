@@ -0,0 +1,56 @@
+package com.wurmonline.womconverter.converters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timings and counts collected while converting a single file. Phase times are in nanoseconds;
+ * time spent writing to disk is only counted in {@link #writeNanos}, not in the encoding phases
+ * that triggered the write. When meshes are encoded concurrently, the mesh and material phases add
+ * up the time of every mesh, so together they can exceed the time the file took.
+ */
+public class FileMetrics {
+    public String file;
+    public long inputBytes;
+    public long importNanos;
+    public long materialNanos;
+    public long meshNanos;
+    public long writeNanos;
+    public long totalNanos;
+    public long bytesWritten;
+    public final List<MeshMetrics> meshes = new ArrayList<>();
+
+    public FileMetrics(String file) {
+        this.file = file;
+    }
+
+    public long getVertices() {
+        long total = 0;
+        for (MeshMetrics mesh : meshes) total += mesh.vertices;
+        return total;
+    }
+
+    public long getTriangles() {
+        long total = 0;
+        for (MeshMetrics mesh : meshes) total += mesh.triangles;
+        return total;
+    }
+
+    public long getSkippedFaces() {
+        long total = 0;
+        for (MeshMetrics mesh : meshes) total += mesh.skippedFaces;
+        return total;
+    }
+
+    public static class MeshMetrics {
+        public final String name;
+        public int vertices;
+        public int triangles;
+        public int skippedFaces;
+        public long encodeNanos;
+
+        public MeshMetrics(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.wurmonline.womconverter.converters;
+
+import org.lwjgl.Version;
+import org.lwjgl.system.Configuration;
+import org.lwjgl.system.Platform;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+/**
+ * Keeps the LWJGL and Assimp libraries bundled in the jar extracted in a cache directory across
+ * runs, and points LWJGL straight at them. Otherwise every launch reads the libraries out of the
+ * jar again to checksum or extract them before the first conversion can start.
+ * <p>
+ * The cache lives in {@code ~/.wom-converter/natives}, or in the directory given with
+ * {@code -Dwomconverter.nativecache}, with one subdirectory per LWJGL version, platform and
+ * architecture. Libraries are written to a temporary file and moved into place, so processes
+ * starting at the same time can share the cache. If anything goes wrong LWJGL loads the
+ * libraries as it normally does.
+ */
+public class NativeLibraryCache {
+    private static final String CACHE_PROPERTY = "womconverter.nativecache";
+
+    /**
+     * Must run before the first LWJGL or Assimp call. Does nothing if the libraries were already
+     * configured with {@code -Dorg.lwjgl.libname} or {@code -Dorg.lwjgl.assimp.libname}.
+     *
+     * @return true if the cached libraries will be used
+     */
+    public static boolean install() {
+        if (Configuration.LIBRARY_NAME.get() != null || Configuration.ASSIMP_LIBRARY_NAME.get() != null) {
+            return false;
+        }
+        try {
+            Path directory = getDirectory();
+            Path lwjgl = extract(directory, "org/lwjgl", getLibraryName("lwjgl"));
+            Path assimp = extract(directory, "org/lwjgl/assimp", getLibraryName("assimp"));
+            if (lwjgl == null || assimp == null) {
+                // Not bundled, so LWJGL finds them on the library path as usual
+                return false;
+            }
+            Configuration.LIBRARY_NAME.set(lwjgl.toString());
+            Configuration.ASSIMP_LIBRARY_NAME.set(assimp.toString());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static Path getDirectory() throws IOException {
+        String root = System.getProperty(CACHE_PROPERTY);
+        Path rootPath = root != null ? Paths.get(root) : Paths.get(System.getProperty("user.home"), ".wom-converter", "natives");
+        String version = Version.getVersion().replaceAll("[^A-Za-z0-9._-]+", "_");
+        Path directory = rootPath.resolve(version + "-" + getPlatform() + "-" + getArchitecture()).toAbsolutePath();
+        Files.createDirectories(directory);
+        return directory;
+    }
+
+    /**
+     * File name of a bundled library, e.g. liblwjgl.so or assimp32.dll.
+     */
+    private static String getLibraryName(String name) {
+        return System.mapLibraryName(Platform.mapLibraryNameBundled(name));
+    }
+
+    private static String getPlatform() {
+        return Platform.get().getName().toLowerCase(Locale.ROOT);
+    }
+
+    private static String getArchitecture() {
+        return Platform.getArchitecture().name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the cached copy of a bundled library, extracting it first if needed, or null if the
+     * library isn't bundled.
+     */
+    private static Path extract(Path directory, String module, String name) throws IOException {
+        Path library = directory.resolve(name);
+        if (Files.isRegularFile(library)) {
+            return library;
+        }
+
+        ClassLoader loader = NativeLibraryCache.class.getClassLoader();
+        URL resource = loader.getResource(getPlatform() + "/" + getArchitecture() + "/" + module + "/" + name);
+        if (resource == null) {
+            resource = loader.getResource(module + "/" + name);
+        }
+        if (resource == null) {
+            return null;
+        }
+
+        Path temp = Files.createTempFile(directory, name, ".tmp");
+        try {
+            try (InputStream in = resource.openStream()) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp.toFile().setExecutable(true);
+            Files.move(temp, library, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Another process got there first
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return library;
+    }
+}
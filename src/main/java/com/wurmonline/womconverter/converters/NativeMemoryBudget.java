@@ -0,0 +1,50 @@
+package com.wurmonline.womconverter.converters;
+
+/**
+ * Process-wide limit on the native memory held by imported scenes. Imports wait while the
+ * limit is exceeded, except that a single scene is always let through so an oversized model
+ * can't stall the batch forever.
+ */
+public class NativeMemoryBudget {
+    private static final NativeMemoryBudget INSTANCE = new NativeMemoryBudget();
+
+    private long limit = Long.MAX_VALUE;
+    private long inUse;
+    private long peak;
+
+    public static NativeMemoryBudget get() {
+        return INSTANCE;
+    }
+
+    public synchronized void setLimit(long bytes) {
+        limit = bytes;
+        notifyAll();
+    }
+
+    public synchronized long getLimit() {
+        return limit;
+    }
+
+    public synchronized long getPeak() {
+        return peak;
+    }
+
+    public synchronized void acquire(long bytes) throws InterruptedException {
+        while (inUse > 0 && inUse + bytes > limit) {
+            wait();
+        }
+        inUse += bytes;
+        peak = Math.max(peak, inUse);
+    }
+
+    public synchronized void adjust(long reserved, long actual) {
+        inUse += actual - reserved;
+        peak = Math.max(peak, inUse);
+        if (actual < reserved) notifyAll();
+    }
+
+    public synchronized void release(long bytes) {
+        inUse -= bytes;
+        notifyAll();
+    }
+}
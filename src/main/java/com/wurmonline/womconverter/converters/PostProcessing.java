@@ -0,0 +1,107 @@
+package com.wurmonline.womconverter.converters;
+
+import org.lwjgl.assimp.AIPropertyStore;
+import org.lwjgl.assimp.Assimp;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assimp post-processing steps applied on import. Starts from a named profile and can be adjusted
+ * with individual {@code aiProcess_} flags given by name, without the prefix.
+ * <ul>
+ * <li>{@code fast}: triangulates only, skipping vertex joining. Quickest import, larger files.</li>
+ * <li>{@code default}: joins identical vertices and triangulates, as the converter always did.</li>
+ * <li>{@code game-optimized}: also reorders triangles for the vertex cache, merges meshes and
+ * drops duplicate materials to save draw calls.</li>
+ * </ul>
+ * Every profile splits meshes above {@link #MAX_VERTICES} vertices, the most a WOM's short
+ * indices can address, so big models convert instead of failing.
+ */
+public class PostProcessing {
+    public static final int MAX_VERTICES = Short.MAX_VALUE;
+
+    private static final Map<String, Integer> PROFILES = new LinkedHashMap<>();
+    private static final Map<String, Integer> FLAGS = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        PROFILES.put("fast", Assimp.aiProcess_Triangulate | Assimp.aiProcess_SplitLargeMeshes);
+        PROFILES.put("default", Assimp.aiProcess_JoinIdenticalVertices | Assimp.aiProcess_Triangulate | Assimp.aiProcess_SplitLargeMeshes);
+        PROFILES.put("game-optimized", Assimp.aiProcess_JoinIdenticalVertices | Assimp.aiProcess_Triangulate | Assimp.aiProcess_SplitLargeMeshes
+                | Assimp.aiProcess_ImproveCacheLocality | Assimp.aiProcess_OptimizeMeshes | Assimp.aiProcess_RemoveRedundantMaterials);
+
+        for (Field field : Assimp.class.getFields()) {
+            if (field.getName().startsWith("aiProcess_") && field.getType() == int.class && Modifier.isStatic(field.getModifiers())) {
+                try {
+                    FLAGS.put(field.getName().substring("aiProcess_".length()), field.getInt(null));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    private final int flags;
+
+    private PostProcessing(int flags) {
+        this.flags = flags;
+    }
+
+    public static PostProcessing profile(String name) {
+        Integer flags = PROFILES.get(name);
+        if (flags == null) {
+            throw new IllegalArgumentException("Unknown post-processing profile: " + name + ", expected one of " + String.join(", ", PROFILES.keySet()));
+        }
+        return new PostProcessing(flags);
+    }
+
+    /**
+     * Adds and removes flags given as a comma separated list of names like
+     * {@code ImproveCacheLocality,-OptimizeMeshes}. A leading {@code -} removes the flag.
+     */
+    public PostProcessing withFlags(String list) {
+        int result = flags;
+        for (String name : list.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) continue;
+            boolean remove = name.startsWith("-");
+            if (remove || name.startsWith("+")) name = name.substring(1);
+            Integer flag = FLAGS.get(name);
+            if (flag == null) {
+                throw new IllegalArgumentException("Unknown post-processing flag: " + name);
+            }
+            result = remove ? result & ~flag : result | flag;
+        }
+        return new PostProcessing(result);
+    }
+
+    public PostProcessing withTangents() {
+        return new PostProcessing(flags | Assimp.aiProcess_CalcTangentSpace);
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    void applyTo(AIPropertyStore store) {
+        Assimp.aiSetImportPropertyInteger(store, Assimp.AI_CONFIG_PP_SLM_VERTEX_LIMIT, MAX_VERTICES);
+    }
+
+    /**
+     * Names of the single-bit flags that are set, for logging.
+     */
+    @Override
+    public String toString() {
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : FLAGS.entrySet()) {
+            int flag = e.getValue();
+            if (Integer.bitCount(flag) == 1 && (flags & flag) != 0) names.add(e.getKey());
+        }
+        return String.join(", ", names);
+    }
+}
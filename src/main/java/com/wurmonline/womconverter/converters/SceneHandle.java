@@ -0,0 +1,135 @@
+package com.wurmonline.womconverter.converters;
+
+import com.wurmonline.womconverter.ConversionFailedException;
+import org.lwjgl.assimp.AIColor4D;
+import org.lwjgl.assimp.AIFace;
+import org.lwjgl.assimp.AIMesh;
+import org.lwjgl.assimp.AIPropertyStore;
+import org.lwjgl.assimp.AIScene;
+import org.lwjgl.assimp.AIVector3D;
+import org.lwjgl.assimp.Assimp;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.system.Pointer.POINTER_SIZE;
+
+/**
+ * An imported Assimp scene that is released when closed. The native memory it holds is
+ * accounted against the global {@link NativeMemoryBudget} for as long as it's open.
+ */
+public class SceneHandle implements AutoCloseable {
+    private final AIScene scene;
+    private final long nativeBytes;
+    private boolean closed;
+
+    private SceneHandle(AIScene scene, long nativeBytes) {
+        this.scene = scene;
+        this.nativeBytes = nativeBytes;
+    }
+
+    public static SceneHandle importFile(File inputFile, PostProcessing postProcessing) throws ConversionFailedException {
+        String path = inputFile.getAbsolutePath();
+        return importScene(inputFile.length(), postProcessing,
+                properties -> Assimp.aiImportFileExWithProperties(path, postProcessing.getFlags(), null, properties));
+    }
+
+    /**
+     * Imports a model held in memory, from the buffer's position to its limit.
+     *
+     * @param formatHint extension of the format the data is in, like "obj" or "dae"
+     */
+    public static SceneHandle importMemory(ByteBuffer data, String formatHint, PostProcessing postProcessing) throws ConversionFailedException {
+        // Assimp reads the data natively, so heap buffers are copied out for the import
+        ByteBuffer nativeData = data.isDirect() ? data : memAlloc(data.remaining());
+        if (nativeData != data) {
+            nativeData.put(data.duplicate());
+            nativeData.flip();
+        }
+        try {
+            return importScene(data.remaining(), postProcessing,
+                    properties -> Assimp.aiImportFileFromMemoryWithProperties(nativeData, postProcessing.getFlags(), formatHint, properties));
+        } finally {
+            if (nativeData != data) memFree(nativeData);
+        }
+    }
+
+    private static SceneHandle importScene(long inputBytes, PostProcessing postProcessing, Function<AIPropertyStore, AIScene> importer) throws ConversionFailedException {
+        NativeMemoryBudget budget = NativeMemoryBudget.get();
+
+        // The real size is only known after import, so hold back on the input size and correct it afterwards
+        long reserved = inputBytes;
+        try {
+            budget.acquire(reserved);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConversionFailedException("Interrupted while waiting for native memory", e);
+        }
+
+        AIScene scene;
+        AIPropertyStore properties = Assimp.aiCreatePropertyStore();
+        try {
+            postProcessing.applyTo(properties);
+            scene = importer.apply(properties);
+        } catch (RuntimeException | Error e) {
+            budget.release(reserved);
+            throw e;
+        } finally {
+            Assimp.aiReleasePropertyStore(properties);
+        }
+
+        if (scene == null) {
+            budget.release(reserved);
+            throw new ConversionFailedException("Failed to load scene - " + Assimp.aiGetErrorString());
+        }
+
+        long nativeBytes = estimateNativeBytes(scene);
+        budget.adjust(reserved, nativeBytes);
+        return new SceneHandle(scene, nativeBytes);
+    }
+
+    public AIScene getScene() {
+        return scene;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        Assimp.aiReleaseImport(scene);
+        NativeMemoryBudget.get().release(nativeBytes);
+    }
+
+    /**
+     * Estimates the memory held by the scene's meshes from their vertex and face counts.
+     * Materials, nodes and names are small next to the vertex data and are ignored.
+     */
+    static long estimateNativeBytes(AIScene scene) {
+        long total = AIScene.SIZEOF;
+        long meshes = memGetAddress(scene.address() + AIScene.MMESHES);
+        int meshesCount = scene.mNumMeshes();
+        for (int i = 0; i < meshesCount; i++) {
+            long mesh = memGetAddress(meshes + (long) i * POINTER_SIZE);
+            long vertices = Integer.toUnsignedLong(memGetInt(mesh + AIMesh.MNUMVERTICES));
+            long faces = Integer.toUnsignedLong(memGetInt(mesh + AIMesh.MNUMFACES));
+
+            int vertexBytes = 0;
+            if (memGetAddress(mesh + AIMesh.MVERTICES) != NULL) vertexBytes += AIVector3D.SIZEOF;
+            if (memGetAddress(mesh + AIMesh.MNORMALS) != NULL) vertexBytes += AIVector3D.SIZEOF;
+            if (memGetAddress(mesh + AIMesh.MTANGENTS) != NULL) vertexBytes += AIVector3D.SIZEOF;
+            if (memGetAddress(mesh + AIMesh.MBITANGENTS) != NULL) vertexBytes += AIVector3D.SIZEOF;
+            for (int set = 0; set < Assimp.AI_MAX_NUMBER_OF_COLOR_SETS; set++) {
+                if (memGetAddress(mesh + AIMesh.MCOLORS + (long) set * POINTER_SIZE) != NULL) vertexBytes += AIColor4D.SIZEOF;
+            }
+            for (int set = 0; set < Assimp.AI_MAX_NUMBER_OF_TEXTURECOORDS; set++) {
+                if (memGetAddress(mesh + AIMesh.MTEXTURECOORDS + (long) set * POINTER_SIZE) != NULL) vertexBytes += AIVector3D.SIZEOF;
+            }
+
+            // Faces are mostly triangles after aiProcess_Triangulate, each with its own index array
+            total += AIMesh.SIZEOF + vertices * vertexBytes + faces * (AIFace.SIZEOF + 3 * 4);
+        }
+        return total;
+    }
+}
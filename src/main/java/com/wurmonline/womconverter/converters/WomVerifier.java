@@ -0,0 +1,147 @@
+package com.wurmonline.womconverter.converters;
+
+import com.wurmonline.womconverter.ConversionFailedException;
+import com.wurmonline.womconverter.wom.WomModel;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.assimp.AIFace;
+import org.lwjgl.assimp.AIMaterial;
+import org.lwjgl.assimp.AIMesh;
+import org.lwjgl.assimp.AINode;
+import org.lwjgl.assimp.AIScene;
+import org.lwjgl.assimp.AIVector3D;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * Checks a converted WOM, as read back by {@code WomReader}, against its source scene: mesh, vertex and index
+ * counts, vertex attribute flags, index bounds, position bounding boxes, textures and attachment
+ * nodes.
+ */
+public class WomVerifier {
+
+    /**
+     * Returns the problems found, or an empty list if the output matches the source.
+     */
+    public static List<String> verify(File inputFile, WomModel model, PostProcessing postProcessing, boolean fixMeshNames) throws ConversionFailedException {
+        List<String> problems = new ArrayList<>();
+        try (SceneHandle scene = SceneHandle.importFile(inputFile, postProcessing)) {
+            AIScene aiScene = scene.getScene();
+            if (model.meshes.size() != aiScene.mNumMeshes()) {
+                problems.add(String.format("%d meshes, source has %d", model.meshes.size(), aiScene.mNumMeshes()));
+                return problems;
+            }
+
+            PointerBuffer meshes = aiScene.mMeshes();
+            PointerBuffer materials = aiScene.mMaterials();
+            for (int i = 0; i < model.meshes.size(); i++) {
+                AIMesh mesh = AIMesh.create(meshes.get(i));
+                AIMaterial material = AIMaterial.create(materials.get(mesh.mMaterialIndex()));
+                verifyMesh(model.meshes.get(i), mesh, material, fixMeshNames, problems);
+            }
+
+            List<String> attachments = new ArrayList<>();
+            AINode root = aiScene.mRootNode();
+            if (root != null && root.mChildren() != null) {
+                PointerBuffer children = root.mChildren();
+                for (int i = 0; i < root.mNumChildren(); i++) {
+                    String name = AINode.create(children.get(i)).mName().dataString();
+                    if (name.startsWith("wom-")) attachments.add(name.substring(4));
+                }
+            }
+            List<String> joints = new ArrayList<>();
+            for (WomModel.Joint joint : model.joints) joints.add(joint.name);
+            if (!joints.equals(attachments)) {
+                problems.add(String.format("joints %s, source has %s", joints, attachments));
+            }
+        }
+        return problems;
+    }
+
+    private static void verifyMesh(WomModel.Mesh wom, AIMesh mesh, AIMaterial material, boolean fixMeshNames, List<String> problems) {
+        String name = mesh.mName().dataString();
+        String prefix = "mesh " + wom.name + ": ";
+
+        if (!fixMeshNames && !wom.name.equals(name)) {
+            problems.add(prefix + "source mesh is named " + name);
+        }
+        if (wom.hasTangents != (mesh.mTangents() != null) || wom.hasBinormals != (mesh.mBitangents() != null) || wom.hasColors != (mesh.mColors(0) != null)) {
+            problems.add(prefix + "vertex attributes don't match the source");
+        }
+        if (wom.vertexCount != mesh.mNumVertices()) {
+            problems.add(prefix + String.format("%d vertices, source has %d", wom.vertexCount, mesh.mNumVertices()));
+            return;
+        }
+
+        long faces = memGetAddress(mesh.address() + AIMesh.MFACES);
+        int triangles = 0;
+        for (int i = 0; i < mesh.mNumFaces(); i++) {
+            if (memGetInt(faces + (long) i * AIFace.SIZEOF + AIFace.MNUMINDICES) == 3) triangles++;
+        }
+        if (wom.indices.length != triangles * 3) {
+            problems.add(prefix + String.format("%d indices, source has %d triangles", wom.indices.length, triangles));
+        }
+        for (short index : wom.indices) {
+            if (index < 0 || index >= wom.vertexCount) {
+                problems.add(prefix + "index " + index + " is out of bounds");
+                break;
+            }
+        }
+
+        float[] womBounds = womBounds(wom);
+        float[] sourceBounds = sourceBounds(mesh);
+        for (int i = 0; i < 6; i++) {
+            if (Float.compare(womBounds[i], sourceBounds[i]) != 0) {
+                problems.add(prefix + String.format("bounds %s, source has %s", formatBounds(womBounds), formatBounds(sourceBounds)));
+                break;
+            }
+        }
+
+        String texture = EncodedMaterial.getTexture(material);
+        if (wom.materials.size() != 1 || !wom.materials.get(0).texture.equals(texture)) {
+            problems.add(prefix + "material doesn't match source texture " + texture);
+        }
+    }
+
+    /**
+     * Min x, y, z and max x, y, z of the positions.
+     */
+    private static float[] womBounds(WomModel.Mesh mesh) {
+        float[] bounds = emptyBounds();
+        int stride = mesh.getStride();
+        for (int v = 0; v < mesh.vertexCount; v++) {
+            for (int axis = 0; axis < 3; axis++) {
+                include(bounds, axis, mesh.vertices[v * stride + axis]);
+            }
+        }
+        return bounds;
+    }
+
+    private static float[] sourceBounds(AIMesh mesh) {
+        float[] bounds = emptyBounds();
+        long vertices = memGetAddress(mesh.address() + AIMesh.MVERTICES);
+        for (int v = 0; v < mesh.mNumVertices(); v++) {
+            for (int axis = 0; axis < 3; axis++) {
+                include(bounds, axis, memGetFloat(vertices + (long) v * AIVector3D.SIZEOF + axis * 4));
+            }
+        }
+        return bounds;
+    }
+
+    private static float[] emptyBounds() {
+        return new float[]{Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+                Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+    }
+
+    private static void include(float[] bounds, int axis, float value) {
+        bounds[axis] = Math.min(bounds[axis], value);
+        bounds[axis + 3] = Math.max(bounds[axis + 3], value);
+    }
+
+    private static String formatBounds(float[] bounds) {
+        return String.format("(%f, %f, %f)-(%f, %f, %f)", bounds[0], bounds[1], bounds[2], bounds[3], bounds[4], bounds[5]);
+    }
+}
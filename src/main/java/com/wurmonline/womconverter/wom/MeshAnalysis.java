@@ -0,0 +1,144 @@
+package com.wurmonline.womconverter.wom;
+
+import java.util.Arrays;
+
+/**
+ * How well a mesh suits the GPU, computed from its index and vertex arrays:
+ * <ul>
+ * <li>ACMR and ATVR: post-transform vertex cache misses per triangle and per referenced vertex,
+ * simulated with a {@value #VERTEX_CACHE_SIZE} entry FIFO. An ATVR of 1 is ideal.</li>
+ * <li>Fetch efficiency: bytes of vertex data used per byte loaded into a
+ * {@value #FETCH_CACHE_BYTES} byte direct-mapped cache of {@value #FETCH_LINE_BYTES} byte lines.
+ * 1 is ideal.</li>
+ * <li>Duplicate ratio: share of vertices that are bit-for-bit copies of an earlier one.</li>
+ * <li>Degenerate triangles: triangles that repeat an index or have zero area.</li>
+ * </ul>
+ */
+public class MeshAnalysis {
+    public static final int VERTEX_CACHE_SIZE = 16;
+    public static final int FETCH_CACHE_BYTES = 16 * 1024;
+    public static final int FETCH_LINE_BYTES = 64;
+
+    public final String mesh;
+    public final int vertices;
+    public final int triangles;
+    public final double acmr;
+    public final double atvr;
+    public final double fetchEfficiency;
+    public final double duplicateRatio;
+    public final int degenerateTriangles;
+
+    private MeshAnalysis(String mesh, int vertices, int triangles, double acmr, double atvr, double fetchEfficiency, double duplicateRatio, int degenerateTriangles) {
+        this.mesh = mesh;
+        this.vertices = vertices;
+        this.triangles = triangles;
+        this.acmr = acmr;
+        this.atvr = atvr;
+        this.fetchEfficiency = fetchEfficiency;
+        this.duplicateRatio = duplicateRatio;
+        this.degenerateTriangles = degenerateTriangles;
+    }
+
+    public static MeshAnalysis analyze(WomModel.Mesh mesh) {
+        short[] indices = mesh.indices;
+        int triangles = indices.length / 3;
+        int vertexBytes = mesh.getStride() * 4;
+
+        // Vertex v is in the FIFO if it was added less than VERTEX_CACHE_SIZE misses ago
+        int[] addedAt = new int[mesh.vertexCount];
+        int misses = 0;
+        int referenced = 0;
+
+        long[] lines = new long[FETCH_CACHE_BYTES / FETCH_LINE_BYTES];
+        Arrays.fill(lines, -1);
+        long fetchedLines = 0;
+
+        for (short index : indices) {
+            int v = index & 0xFFFF;
+            if (v >= mesh.vertexCount) continue;
+            if (addedAt[v] == 0) referenced++;
+            if (addedAt[v] != 0 && misses - addedAt[v] < VERTEX_CACHE_SIZE) continue;
+
+            misses++;
+            addedAt[v] = misses;
+            long first = (long) v * vertexBytes / FETCH_LINE_BYTES;
+            long last = ((long) v * vertexBytes + vertexBytes - 1) / FETCH_LINE_BYTES;
+            for (long line = first; line <= last; line++) {
+                int slot = (int) (line % lines.length);
+                if (lines[slot] != line) {
+                    lines[slot] = line;
+                    fetchedLines++;
+                }
+            }
+        }
+
+        double acmr = triangles > 0 ? (double) misses / triangles : 0;
+        double atvr = referenced > 0 ? (double) misses / referenced : 0;
+        double fetchEfficiency = fetchedLines > 0 ? (double) referenced * vertexBytes / (fetchedLines * FETCH_LINE_BYTES) : 1;
+        double duplicateRatio = mesh.vertexCount > 0 ? (double) countDuplicates(mesh) / mesh.vertexCount : 0;
+        return new MeshAnalysis(mesh.name, mesh.vertexCount, triangles, acmr, atvr, fetchEfficiency, duplicateRatio, countDegenerate(mesh));
+    }
+
+    /**
+     * Counts vertices equal to an earlier one in all attributes, using an open-addressing table of
+     * vertex indices.
+     */
+    private static int countDuplicates(WomModel.Mesh mesh) {
+        int stride = mesh.getStride();
+        float[] data = mesh.vertices;
+        int[] table = new int[Integer.highestOneBit(Math.max(1, mesh.vertexCount) * 2) * 2];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+
+        int duplicates = 0;
+        for (int v = 0; v < mesh.vertexCount; v++) {
+            int hash = 1;
+            for (int i = v * stride; i < (v + 1) * stride; i++) {
+                hash = 31 * hash + Float.floatToRawIntBits(data[i]);
+            }
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (table[slot] != -1 && !sameVertex(data, table[slot], v, stride)) {
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] == -1) {
+                table[slot] = v;
+            } else {
+                duplicates++;
+            }
+        }
+        return duplicates;
+    }
+
+    private static boolean sameVertex(float[] data, int a, int b, int stride) {
+        for (int i = 0; i < stride; i++) {
+            if (Float.floatToRawIntBits(data[a * stride + i]) != Float.floatToRawIntBits(data[b * stride + i])) return false;
+        }
+        return true;
+    }
+
+    private static int countDegenerate(WomModel.Mesh mesh) {
+        short[] indices = mesh.indices;
+        float[] data = mesh.vertices;
+        int stride = mesh.getStride();
+        int degenerate = 0;
+        for (int t = 0; t + 2 < indices.length; t += 3) {
+            int a = indices[t] & 0xFFFF;
+            int b = indices[t + 1] & 0xFFFF;
+            int c = indices[t + 2] & 0xFFFF;
+            if (a == b || b == c || a == c) {
+                degenerate++;
+                continue;
+            }
+            if (a >= mesh.vertexCount || b >= mesh.vertexCount || c >= mesh.vertexCount) continue;
+
+            int pa = a * stride, pb = b * stride, pc = c * stride;
+            float abx = data[pb] - data[pa], aby = data[pb + 1] - data[pa + 1], abz = data[pb + 2] - data[pa + 2];
+            float acx = data[pc] - data[pa], acy = data[pc + 1] - data[pa + 1], acz = data[pc + 2] - data[pa + 2];
+            float x = aby * acz - abz * acy;
+            float y = abz * acx - abx * acz;
+            float z = abx * acy - aby * acx;
+            if (x == 0 && y == 0 && z == 0) degenerate++;
+        }
+        return degenerate;
+    }
+}
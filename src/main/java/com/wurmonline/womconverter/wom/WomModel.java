@@ -0,0 +1,156 @@
+package com.wurmonline.womconverter.wom;
+
+import java.util.List;
+
+/**
+ * A WOM file as read by {@link WomReader}. Vertex data is kept as one interleaved float array and
+ * one short array per mesh, in the same layout as the file.
+ */
+public class WomModel {
+    public final List<Mesh> meshes;
+    public final List<Joint> joints;
+    /**
+     * One flag per mesh, in mesh order.
+     */
+    public final boolean[] skinning;
+    /**
+     * Bone weights of each mesh in mesh order, null for meshes without skinning.
+     */
+    public final Skin[] skins;
+
+    public WomModel(List<Mesh> meshes, List<Joint> joints, boolean[] skinning, Skin[] skins) {
+        this.meshes = meshes;
+        this.joints = joints;
+        this.skinning = skinning;
+        this.skins = skins;
+    }
+
+    public static class Mesh {
+        public final String name;
+        public final boolean hasTangents;
+        public final boolean hasBinormals;
+        public final boolean hasColors;
+        public final int vertexCount;
+        /**
+         * Interleaved position, normal, uv, then color, tangent and binormal when present.
+         */
+        public final float[] vertices;
+        public final short[] indices;
+        public final List<Material> materials;
+
+        public Mesh(String name, boolean hasTangents, boolean hasBinormals, boolean hasColors, int vertexCount, float[] vertices, short[] indices, List<Material> materials) {
+            this.name = name;
+            this.hasTangents = hasTangents;
+            this.hasBinormals = hasBinormals;
+            this.hasColors = hasColors;
+            this.vertexCount = vertexCount;
+            this.vertices = vertices;
+            this.indices = indices;
+            this.materials = materials;
+        }
+
+        /**
+         * Number of floats per vertex.
+         */
+        public int getStride() {
+            return getStride(hasTangents, hasBinormals, hasColors);
+        }
+
+        public static int getStride(boolean hasTangents, boolean hasBinormals, boolean hasColors) {
+            int stride = 3 + 3 + 2;
+            if (hasColors) stride += 3;
+            if (hasTangents) stride += 3;
+            if (hasBinormals) stride += 3;
+            return stride;
+        }
+    }
+
+    public static class Material {
+        public final String texture;
+        public final String name;
+        public final boolean enabled;
+        /**
+         * RGBA, or null when the file doesn't have it.
+         */
+        public final float[] emissive;
+        /**
+         * NaN when the file doesn't have it.
+         */
+        public final float shininess;
+        public final float[] specular;
+        public final float[] transparency;
+
+        public Material(String texture, String name, boolean enabled, float[] emissive, float shininess, float[] specular, float[] transparency) {
+            this.texture = texture;
+            this.name = name;
+            this.enabled = enabled;
+            this.emissive = emissive;
+            this.shininess = shininess;
+            this.specular = specular;
+            this.transparency = transparency;
+        }
+    }
+
+    /**
+     * An attachment point, written for each {@code wom-} node under the scene root.
+     */
+    public static class Joint {
+        public final String parent;
+        public final String name;
+        public final boolean flag;
+        /**
+         * Row-major 4x4 node transformation.
+         */
+        public final float[] transform;
+        /**
+         * Second 4x4 matrix of the joint, all zeros in files written by this converter.
+         */
+        public final float[] bindPose;
+
+        public Joint(String parent, String name, boolean flag, float[] transform, float[] bindPose) {
+            this.parent = parent;
+            this.name = name;
+            this.flag = flag;
+            this.transform = transform;
+            this.bindPose = bindPose;
+        }
+    }
+
+    /**
+     * Bone weights of a mesh, as written by {@code -skinning} after the skinning flag of the mesh:
+     * <pre>
+     * int     bone count
+     * per bone:
+     *   string  bone name
+     *   float   offset matrix from mesh space to bone space, 16 floats row-major
+     * int     influences per vertex, n
+     * per vertex, strongest first:
+     *   n times int bone index and float weight, unused slots are bone 0 with weight 0
+     * </pre>
+     * The weights of a vertex add up to 1, or are all 0 when no bone influences it.
+     */
+    public static class Skin {
+        public final String[] boneNames;
+        /**
+         * One row-major 4x4 matrix per bone.
+         */
+        public final float[] offsetMatrices;
+        public final int influences;
+        /**
+         * {@link #influences} bone indices per vertex.
+         */
+        public final int[] bones;
+        /**
+         * {@link #influences} weights per vertex, matching {@link #bones}.
+         */
+        public final float[] weights;
+
+        public Skin(String[] boneNames, float[] offsetMatrices, int influences, int[] bones, float[] weights) {
+            this.boneNames = boneNames;
+            this.offsetMatrices = offsetMatrices;
+            this.influences = influences;
+            this.bones = bones;
+            this.weights = weights;
+        }
+    }
+}
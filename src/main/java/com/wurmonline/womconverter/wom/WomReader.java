@@ -0,0 +1,168 @@
+package com.wurmonline.womconverter.wom;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads WOM files in the layout {@link WomWriter} output is written in. Files are memory-mapped
+ * and vertex and index data is copied out in bulk, so reading is about as fast as the disk.
+ */
+public class WomReader {
+    private static final int MATRIX_FLOATS = 16;
+
+    private final ByteBuffer buffer;
+
+    private WomReader(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static WomModel read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads a whole model from the buffer's position to its limit.
+     *
+     * @throws IOException if the data is truncated, malformed or followed by anything else
+     */
+    public static WomModel read(ByteBuffer buffer) throws IOException {
+        try {
+            return new WomReader(buffer.slice()).readModel();
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated WOM file", e);
+        }
+    }
+
+    private WomModel readModel() throws IOException {
+        int meshesCount = readCount("mesh");
+        List<WomModel.Mesh> meshes = new ArrayList<>(meshesCount);
+        for (int i = 0; i < meshesCount; i++) {
+            meshes.add(readMesh());
+        }
+
+        int jointsCount = readCount("joint");
+        List<WomModel.Joint> joints = new ArrayList<>(jointsCount);
+        for (int i = 0; i < jointsCount; i++) {
+            String parent = readString();
+            String name = readString();
+            boolean flag = buffer.get() != 0;
+            joints.add(new WomModel.Joint(parent, name, flag, readFloats(MATRIX_FLOATS), readFloats(MATRIX_FLOATS)));
+        }
+
+        boolean[] skinning = new boolean[meshesCount];
+        WomModel.Skin[] skins = new WomModel.Skin[meshesCount];
+        for (int i = 0; i < meshesCount; i++) {
+            skinning[i] = buffer.get() != 0;
+            if (skinning[i]) {
+                skins[i] = readSkin(meshes.get(i));
+            }
+        }
+
+        if (buffer.hasRemaining()) {
+            throw new IOException(buffer.remaining() + " unexpected bytes after the end of the model");
+        }
+        return new WomModel(meshes, joints, skinning, skins);
+    }
+
+    private WomModel.Skin readSkin(WomModel.Mesh mesh) throws IOException {
+        int boneCount = readCount("bone");
+        // Every bone takes at least a string length and a matrix
+        checkedSize((long) boneCount * (4 + MATRIX_FLOATS * 4));
+        String[] boneNames = new String[boneCount];
+        float[] offsetMatrices = new float[boneCount * MATRIX_FLOATS];
+        for (int b = 0; b < boneCount; b++) {
+            boneNames[b] = readString();
+            System.arraycopy(readFloats(MATRIX_FLOATS), 0, offsetMatrices, b * MATRIX_FLOATS, MATRIX_FLOATS);
+        }
+
+        int influences = readCount("influence");
+        int slots = checkedSize((long) mesh.vertexCount * influences * 8) / 8;
+        int[] bones = new int[slots];
+        float[] weights = new float[slots];
+        for (int i = 0; i < slots; i++) {
+            bones[i] = buffer.getInt();
+            weights[i] = buffer.getFloat();
+            if (bones[i] < 0 || bones[i] >= boneCount) {
+                throw new IOException("Bone index " + bones[i] + " of mesh " + mesh.name + " is out of bounds");
+            }
+        }
+        return new WomModel.Skin(boneNames, offsetMatrices, influences, bones, weights);
+    }
+
+    private WomModel.Mesh readMesh() throws IOException {
+        boolean hasTangents = buffer.get() != 0;
+        boolean hasBinormals = buffer.get() != 0;
+        boolean hasColors = buffer.get() != 0;
+        String name = readString();
+
+        int vertexCount = readCount("vertex");
+        int stride = WomModel.Mesh.getStride(hasTangents, hasBinormals, hasColors);
+        float[] vertices = readFloats(checkedSize((long) vertexCount * stride * 4) / 4);
+
+        int indexCount = readCount("index");
+        short[] indices = new short[checkedSize((long) indexCount * 2) / 2];
+        buffer.asShortBuffer().get(indices);
+        buffer.position(buffer.position() + indexCount * 2);
+
+        int materialsCount = readCount("material");
+        List<WomModel.Material> materials = new ArrayList<>(materialsCount);
+        for (int i = 0; i < materialsCount; i++) {
+            materials.add(readMaterial());
+        }
+
+        return new WomModel.Mesh(name, hasTangents, hasBinormals, hasColors, vertexCount, vertices, indices, materials);
+    }
+
+    private WomModel.Material readMaterial() throws IOException {
+        String texture = readString();
+        String name = readString();
+        boolean enabled = buffer.get() != 0;
+        float[] emissive = buffer.get() != 0 ? readFloats(4) : null;
+        float shininess = buffer.get() != 0 ? buffer.getFloat() : Float.NaN;
+        float[] specular = buffer.get() != 0 ? readFloats(4) : null;
+        float[] transparency = buffer.get() != 0 ? readFloats(4) : null;
+        return new WomModel.Material(texture, name, enabled, emissive, shininess, specular, transparency);
+    }
+
+    private int readCount(String what) throws IOException {
+        int count = buffer.getInt();
+        if (count < 0) {
+            throw new IOException("Negative " + what + " count " + count + " at offset " + (buffer.position() - 4));
+        }
+        return count;
+    }
+
+    /**
+     * Checks that {@code bytes} more bytes are available before anything that large is allocated.
+     */
+    private int checkedSize(long bytes) throws IOException {
+        if (bytes > buffer.remaining()) {
+            throw new IOException("Truncated WOM file: " + bytes + " bytes needed at offset " + buffer.position() + ", " + buffer.remaining() + " left");
+        }
+        return (int) bytes;
+    }
+
+    private float[] readFloats(int count) throws IOException {
+        float[] values = new float[checkedSize((long) count * 4) / 4];
+        buffer.asFloatBuffer().get(values);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+
+    private String readString() throws IOException {
+        int length = readCount("string length");
+        byte[] bytes = new byte[checkedSize(length)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,121 @@
+package com.wurmonline.womconverter.wom;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Little-endian WOM output staged in a direct buffer and written to a channel in large blocks.
+ * Floats are written with {@link Float#floatToIntBits(float)} so output matches what
+ * {@code LittleEndianDataOutputStream} produced, NaNs included.
+ */
+public class WomWriter implements AutoCloseable {
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private long bytesWritten;
+    private long writeNanos;
+    private boolean closed;
+
+    public WomWriter(File file) throws IOException {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    public WomWriter(WritableByteChannel channel) {
+        this(channel, ByteBuffer.allocateDirect(BUFFER_SIZE));
+    }
+
+    /**
+     * Stages output in a heap buffer of the given size instead, for short-lived writers that only
+     * write into memory, where a direct buffer gains nothing.
+     */
+    public WomWriter(WritableByteChannel channel, int bufferSize) {
+        this(channel, ByteBuffer.allocate(bufferSize));
+    }
+
+    private WomWriter(WritableByteChannel channel, ByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Returns the staging buffer with at least {@code bytes} bytes of free space, for callers
+     * that encode bulk data directly. {@code bytes} must not exceed the buffer size.
+     */
+    public ByteBuffer reserve(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+        return buffer;
+    }
+
+    public void write(int b) throws IOException {
+        reserve(1).put((byte) b);
+    }
+
+    public void writeShort(int v) throws IOException {
+        reserve(2).putShort((short) v);
+    }
+
+    public void writeInt(int v) throws IOException {
+        reserve(4).putInt(v);
+    }
+
+    public void writeFloat(float v) throws IOException {
+        reserve(4).putInt(Float.floatToIntBits(v));
+    }
+
+    public void write(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            int count = Math.min(bytes.length - offset, reserve(1).remaining());
+            buffer.put(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    public void writeString(String str) throws IOException {
+        byte[] chars = str.getBytes(StandardCharsets.UTF_8);
+        writeInt(chars.length);
+        write(chars);
+    }
+
+    public void flush() throws IOException {
+        long start = System.nanoTime();
+        buffer.flip();
+        bytesWritten += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        writeNanos += System.nanoTime() - start;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Time spent writing to the channel so far, in nanoseconds.
+     */
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}